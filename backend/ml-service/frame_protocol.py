@@ -0,0 +1,90 @@
+"""
+Length-prefixed binary frames for /analyze_frames, mirrored by MlFrameCodec on the Java side.
+
+All integers and floats are big-endian.
+Request:  version u8, kind u8, height u16, width u16, count u16, then per item a u32 length and the payload
+          (an encoded image file, or height x width x 3 RGB bytes for tensors)
+Response: version u8, count u16, then per item a status u8 and either
+          label, confidence f64, score count u8, (name, value f64) per score, version length u8, version
+          or an error length u16 and message. Names are a dictionary id u8, or 0xFF, a length u8 and UTF-8.
+"""
+import struct
+from typing import Any, Dict, List, Tuple
+
+MEDIA_TYPE = "application/x-ml-frames"
+
+VERSION = 1
+
+KIND_IMAGE = 0
+KIND_RGB8_TENSOR = 1
+
+STATUS_OK = 0
+STATUS_ERROR = 1
+
+# Append only, the position of a name is its id on the wire
+DICTIONARY = ["REAL", "AI_GENERATED", "UNCERTAIN"]
+INLINE_NAME = 0xFF
+
+_REQUEST_HEADER = struct.Struct(">BBHHH")
+_LENGTH = struct.Struct(">I")
+
+
+def decode_request(body: bytes) -> Tuple[int, Tuple[int, int], List[memoryview]]:
+    """Split a request into its payload kind, tensor shape and payloads, without copying them"""
+    if len(body) < _REQUEST_HEADER.size:
+        raise ValueError("Truncated frame header")
+    version, kind, height, width, count = _REQUEST_HEADER.unpack_from(body, 0)
+    if version != VERSION:
+        raise ValueError(f"Unsupported frame version {version}")
+    if kind not in (KIND_IMAGE, KIND_RGB8_TENSOR):
+        raise ValueError(f"Unknown payload kind {kind}")
+
+    view = memoryview(body)
+    offset = _REQUEST_HEADER.size
+    payloads = []
+    for _ in range(count):
+        if offset + _LENGTH.size > len(body):
+            raise ValueError("Truncated frame")
+        (length,) = _LENGTH.unpack_from(body, offset)
+        offset += _LENGTH.size
+        if offset + length > len(body):
+            raise ValueError("Truncated frame")
+        if kind == KIND_RGB8_TENSOR and length != height * width * 3:
+            raise ValueError(f"Tensor of {length} bytes does not match {height}x{width}x3")
+        payloads.append(view[offset:offset + length])
+        offset += length
+    return kind, (height, width), payloads
+
+
+def encode_results(results: List[Dict[str, Any]], model_version: str) -> bytes:
+    """Encode analysis results in request order; a result with an "error" key becomes an error item"""
+    out = bytearray(struct.pack(">BH", VERSION, len(results)))
+    version_bytes = model_version.encode("utf-8")[:255]
+    for result in results:
+        if "error" in result:
+            message = str(result["error"]).encode("utf-8")[:0xFFFF]
+            out += struct.pack(">BH", STATUS_ERROR, len(message))
+            out += message
+            continue
+
+        out.append(STATUS_OK)
+        _write_name(out, result["label"])
+        out += struct.pack(">d", float(result["confidence"]))
+        scores = result.get("scores") or {}
+        out.append(len(scores))
+        for name, value in scores.items():
+            _write_name(out, name)
+            out += struct.pack(">d", float(value))
+        out.append(len(version_bytes))
+        out += version_bytes
+    return bytes(out)
+
+
+def _write_name(out: bytearray, name: str) -> None:
+    if name in DICTIONARY:
+        out.append(DICTIONARY.index(name))
+        return
+    encoded = name.encode("utf-8")[:255]
+    out.append(INLINE_NAME)
+    out.append(len(encoded))
+    out += encoded
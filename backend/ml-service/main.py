@@ -1,6 +1,6 @@
-from fastapi import FastAPI, File, UploadFile, HTTPException
+from fastapi import FastAPI, File, UploadFile, HTTPException, Request
 from fastapi.middleware.cors import CORSMiddleware
-from fastapi.responses import JSONResponse
+from fastapi.responses import JSONResponse, Response
 import uvicorn
 import io
 import base64
@@ -13,6 +13,7 @@ from typing import Dict, Any
 import logging
 
 from ml_engine import MLEngine
+import frame_protocol
 from config import settings
 
 # Configure logging
@@ -162,6 +163,7 @@ async def analyze_batch(files: list[UploadFile] = File(...)):
                     "label": result["label"],
                     "confidence": result["confidence"],
                     "scores": result["scores"],
+                    "model_version": ml_engine.get_model_version(),
                     "success": True
                 })
                 
@@ -178,6 +180,44 @@ async def analyze_batch(files: list[UploadFile] = File(...)):
         logger.error(f"Error in batch analysis: {str(e)}")
         raise HTTPException(status_code=500, detail=f"Batch analysis failed: {str(e)}")
 
+@app.post("/analyze_frames")
+async def analyze_frames(request: Request):
+    """
+    Analyze images sent in the binary frame protocol, see frame_protocol.py
+
+    Payloads are either encoded image files or fixed-shape RGB tensors already
+    decoded and resized by the caller, which skips image decoding here.
+
+    Returns:
+        Binary frame with one typed result per payload, in request order
+    """
+    body = await request.body()
+    try:
+        kind, (height, width), payloads = frame_protocol.decode_request(body)
+    except ValueError as e:
+        raise HTTPException(status_code=400, detail=str(e))
+
+    results = []
+    for payload in payloads:
+        try:
+            if kind == frame_protocol.KIND_RGB8_TENSOR:
+                # frombuffer arrays are read-only, which some OpenCV calls reject
+                image_array = np.frombuffer(payload, dtype=np.uint8).reshape(height, width, 3).copy()
+            else:
+                image = Image.open(io.BytesIO(payload))
+                if image.mode != 'RGB':
+                    image = image.convert('RGB')
+                image_array = np.array(image)
+
+            results.append(ml_engine.analyze_image(image_array))
+        except Exception as e:
+            results.append({"error": str(e)})
+
+    return Response(
+        content=frame_protocol.encode_results(results, ml_engine.get_model_version()),
+        media_type=frame_protocol.MEDIA_TYPE
+    )
+
 @app.get("/model_info")
 async def get_model_info():
     """Get information about the loaded ML model"""
@@ -0,0 +1,52 @@
+package com.isthispersonreal.api.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfig {
+    
+    @Autowired
+    private Environment environment;
+    
+    @Value("${async.core-pool-size}")
+    private int corePoolSize;
+    
+    @Value("${async.max-pool-size}")
+    private int maxPoolSize;
+    
+    @Value("${async.queue-capacity}")
+    private int queueCapacity;
+    
+    @Value("${async.thread-name-prefix}")
+    private String threadNamePrefix;
+    
+    @Bean(name = "analysisExecutor")
+    public AsyncTaskExecutor analysisExecutor() {
+        // With virtual threads every task gets its own thread, concurrency is bounded by the
+        // queue worker and the per-downstream bulkheads instead of the pool size
+        if (Threading.VIRTUAL.isActive(environment)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+            executor.setVirtualThreads(true);
+            executor.setTaskTerminationTimeout(30000);
+            return executor;
+        }
+        
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.isthispersonreal.api.config;
+
+import com.isthispersonreal.api.model.IdGenerators;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+// Moves the id generator rows past the ids already in use, which Hibernate does not do when it creates
+// them for tables that were filled through AUTO_INCREMENT. Runs after the schema update and before
+// anything can insert. Idempotent, a row that is already ahead of its table is left alone, so it is
+// safe on every start and on several instances at once. Instances still on AUTO_INCREMENT ids must not insert once this has run,
+// so upgrade all of them together.
+@Component
+@DependsOn("entityManagerFactory")
+public class IdGeneratorSeeder {
+    
+    private static final Logger logger = LoggerFactory.getLogger(IdGeneratorSeeder.class);
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @PostConstruct
+    public void seed() {
+        for (String table : IdGenerators.TABLES) {
+            try {
+                jdbcTemplate.update("INSERT INTO " + IdGenerators.TABLE + " (" + IdGenerators.NAME_COLUMN + ", "
+                        + IdGenerators.VALUE_COLUMN + ") SELECT ?, 0 FROM DUAL WHERE NOT EXISTS (SELECT 1 FROM "
+                        + IdGenerators.TABLE + " WHERE " + IdGenerators.NAME_COLUMN + " = ?)", table, table);
+            } catch (DuplicateKeyException e) {
+                // Another instance created the row first
+            }
+            
+            // Ids handed out by the generator never exceed its stored value + 1, anything higher came from
+            // AUTO_INCREMENT. A stored value of n starts its first block below n, so leave a whole block of room.
+            int raised = jdbcTemplate.update("UPDATE " + IdGenerators.TABLE + " SET " + IdGenerators.VALUE_COLUMN
+                    + " = (SELECT COALESCE(MAX(id), 0) + ? FROM " + table + ") WHERE " + IdGenerators.NAME_COLUMN
+                    + " = ? AND " + IdGenerators.VALUE_COLUMN + " + 1 < (SELECT COALESCE(MAX(id), 0) FROM " + table + ")",
+                    IdGenerators.ALLOCATION_SIZE, table);
+            if (raised > 0) {
+                logger.info("Moved the {} id generator past the existing rows", table);
+            }
+        }
+    }
+}
\ No newline at end of file
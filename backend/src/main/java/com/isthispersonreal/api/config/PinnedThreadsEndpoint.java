@@ -0,0 +1,109 @@
+package com.isthispersonreal.api.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// /actuator/pinning: where virtual threads got pinned to their carrier (synchronized blocks,
+// native frames), grouped by stack and sorted by how often it happened
+@Component
+@Endpoint(id = "pinning")
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class PinnedThreadsEndpoint {
+    
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    
+    @Value("${diagnostics.pinning.threshold}")
+    private Duration threshold;
+    
+    @Value("${diagnostics.pinning.stack-depth}")
+    private int stackDepth;
+    
+    private final Map<String, PinningSite> sites = new ConcurrentHashMap<>();
+    
+    private RecordingStream recording;
+    
+    @PostConstruct
+    public void start() {
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::record);
+        recording.startAsync();
+    }
+    
+    @PreDestroy
+    public void stop() {
+        recording.close();
+    }
+    
+    @ReadOperation
+    public Map<String, Object> report() {
+        List<Map<String, Object>> hotspots = new ArrayList<>();
+        sites.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, PinningSite> site) -> site.getValue().count.sum()).reversed())
+                .forEach(site -> {
+                    Map<String, Object> hotspot = new HashMap<>();
+                    hotspot.put("stack", site.getKey().split("\n"));
+                    hotspot.put("count", site.getValue().count.sum());
+                    hotspot.put("totalMs", site.getValue().totalNanos.sum() / 1_000_000);
+                    hotspot.put("maxMs", site.getValue().maxNanos.get() / 1_000_000);
+                    hotspots.add(hotspot);
+                });
+        
+        Map<String, Object> report = new HashMap<>();
+        report.put("thresholdMs", threshold.toMillis());
+        report.put("hotspots", hotspots);
+        return report;
+    }
+    
+    private void record(RecordedEvent event) {
+        PinningSite site = sites.computeIfAbsent(stackOf(event.getStackTrace()), stack -> new PinningSite());
+        long nanos = event.getDuration().toNanos();
+        site.count.increment();
+        site.totalNanos.add(nanos);
+        site.maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+    
+    private String stackOf(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "<no stack trace>";
+        }
+        StringBuilder stack = new StringBuilder();
+        List<RecordedFrame> frames = stackTrace.getFrames();
+        for (int i = 0; i < Math.min(stackDepth, frames.size()); i++) {
+            RecordedFrame frame = frames.get(i);
+            if (i > 0) {
+                stack.append('\n');
+            }
+            stack.append(frame.getMethod().getType().getName()).append('.')
+                    .append(frame.getMethod().getName()).append(':').append(frame.getLineNumber());
+        }
+        return stack.toString();
+    }
+    
+    private static class PinningSite {
+        
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.isthispersonreal.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+public class ReactiveConfig {
+    
+    // JPA, Redis and spool file access stay blocking, so the reactive path offloads them onto a
+    // bounded pool sized to the connection pool instead of tying up event loop threads
+    @Value("${analysis.reactive.blocking-threads}")
+    private int blockingThreads;
+    
+    @Value("${analysis.reactive.blocking-queue-capacity}")
+    private int blockingQueueCapacity;
+    
+    @Bean(name = "blockingScheduler", destroyMethod = "dispose")
+    public Scheduler blockingScheduler() {
+        return Schedulers.newBoundedElastic(blockingThreads, blockingQueueCapacity, "analysis-blocking");
+    }
+}
\ No newline at end of file
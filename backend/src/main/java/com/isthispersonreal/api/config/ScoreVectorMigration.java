@@ -0,0 +1,107 @@
+package com.isthispersonreal.api.config;
+
+import com.isthispersonreal.api.model.ScoreVectorConverter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Copies scores from the old analysis_scores collection table into analysis_results.score_vector.
+// Runs while the context starts, after the schema update has added the column and before the web server,
+// the queue workers and the caches can read a row whose scores are still in the old table.
+// Idempotent and safe to run on several instances at once, rows that already have a vector are skipped.
+@Component
+@DependsOn("entityManagerFactory")
+@ConditionalOnProperty(name = "analysis.migration.score-vector.enabled", havingValue = "true", matchIfMissing = true)
+public class ScoreVectorMigration {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ScoreVectorMigration.class);
+    
+    private static final String LEGACY_TABLE = "analysis_scores";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Value("${analysis.migration.score-vector.batch-size}")
+    private int batchSize;
+    
+    @Value("${analysis.migration.score-vector.drop-legacy-table}")
+    private boolean dropLegacyTable;
+    
+    @PostConstruct
+    public void migrate() {
+        if (!legacyTableExists()) {
+            return;
+        }
+        
+        long lastId = 0;
+        int migrated = 0;
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList(
+                    "SELECT id FROM analysis_results WHERE score_vector IS NULL AND id > ? ORDER BY id LIMIT ?",
+                    Long.class, lastId, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            lastId = ids.get(ids.size() - 1);
+            
+            Map<Long, Map<String, Double>> scores = new HashMap<>();
+            String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+            jdbcTemplate.query("SELECT analysis_result_id, score_type, score_value FROM " + LEGACY_TABLE
+                            + " WHERE analysis_result_id IN (" + placeholders + ")",
+                    (RowCallbackHandler) rs -> {
+                        double value = rs.getDouble("score_value");
+                        Double score = rs.wasNull() ? null : value;
+                        scores.computeIfAbsent(rs.getLong("analysis_result_id"), id -> new LinkedHashMap<>())
+                                .put(rs.getString("score_type"), score);
+                    },
+                    ids.toArray());
+            
+            List<Object[]> updates = new ArrayList<>(scores.size());
+            scores.forEach((id, values) -> updates.add(new Object[]{ScoreVectorConverter.encode(values), id}));
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                        "UPDATE analysis_results SET score_vector = ? WHERE id = ? AND score_vector IS NULL", updates);
+                migrated += updates.size();
+            }
+        }
+        
+        if (migrated > 0) {
+            logger.info("Migrated scores of {} analysis results into score_vector", migrated);
+        }
+        if (dropLegacyTable) {
+            jdbcTemplate.execute("DROP TABLE " + LEGACY_TABLE);
+            logger.info("Dropped legacy {} table", LEGACY_TABLE);
+        }
+    }
+    
+    private boolean legacyTableExists() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (String name : new String[]{LEGACY_TABLE, LEGACY_TABLE.toUpperCase()}) {
+                try (ResultSet tables = metaData.getTables(connection.getCatalog(), null, name, new String[]{"TABLE"})) {
+                    if (tables.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.isthispersonreal.api.config;
+
+import com.isthispersonreal.api.repository.UserAnalysisStatsRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+// Creates user_analysis_stats rows for users analysed before the rollup existed. Runs while the context
+// starts, before the web server, the queue workers and the scheduled tasks, so no result stored by this
+// instance can create a user's row first and hide their earlier results from the backfill. Idempotent,
+// a user that already has a row is skipped, so only the first start after the upgrade does real work.
+@Component
+@DependsOn("entityManagerFactory")
+@ConditionalOnProperty(name = "analysis.migration.user-stats.enabled", havingValue = "true", matchIfMissing = true)
+public class UserAnalysisStatsBackfill {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UserAnalysisStatsBackfill.class);
+    
+    @Autowired
+    private UserAnalysisStatsRepository userAnalysisStatsRepository;
+    
+    @PostConstruct
+    public void backfill() {
+        int created = userAnalysisStatsRepository.backfillMissing();
+        if (created > 0) {
+            logger.info("Backfilled analysis rollups for {} users", created);
+        }
+    }
+}
\ No newline at end of file
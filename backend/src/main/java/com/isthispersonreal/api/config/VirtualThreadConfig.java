@@ -0,0 +1,34 @@
+package com.isthispersonreal.api.config;
+
+import com.isthispersonreal.api.resilience.BulkheadDataSource;
+import com.isthispersonreal.api.resilience.BulkheadRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+// Active with spring.threads.virtual.enabled=true on Java 21, where Spring Boot already moves Tomcat,
+// @Async and @Scheduled onto virtual threads
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConfig {
+    
+    // Virtual threads no longer cap concurrency at the Tomcat pool size, so the database gets its own limit
+    @Bean
+    public static BeanPostProcessor bulkheadDataSourcePostProcessor(ObjectProvider<BulkheadRegistry> bulkheadRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof BulkheadDataSource)) {
+                    return new BulkheadDataSource(dataSource,
+                            () -> bulkheadRegistry.getObject().get(BulkheadRegistry.DATABASE));
+                }
+                return bean;
+            }
+        };
+    }
+}
\ No newline at end of file
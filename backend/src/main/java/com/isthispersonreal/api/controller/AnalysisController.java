@@ -1,17 +1,33 @@
 package com.isthispersonreal.api.controller;
 
+import com.isthispersonreal.api.model.AnalysisQueue;
 import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.resilience.DownstreamUnavailableException;
+import com.isthispersonreal.api.resilience.RateLimitExceededException;
 import com.isthispersonreal.api.security.JwtTokenProvider;
 import com.isthispersonreal.api.service.AnalysisService;
+import com.isthispersonreal.api.service.AnalysisSubmission;
+import com.isthispersonreal.api.service.BulkAnalysisItem;
+import com.isthispersonreal.api.service.BulkAnalysisService;
+import com.isthispersonreal.api.service.ExplanationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -22,11 +38,24 @@ public class AnalysisController {
     @Autowired
     private AnalysisService analysisService;
     
+    @Autowired
+    private BulkAnalysisService bulkAnalysisService;
+    
+    @Autowired
+    private ExplanationService explanationService;
+    
     @Autowired
     private JwtTokenProvider tokenProvider;
     
+    @Value("${analysis.upload.max-wait-ms}")
+    private long maxUploadWaitMs;
+    
+    @Value("${analysis.explanation.max-wait}")
+    private Duration maxExplanationWait;
+    
     @PostMapping("/upload")
-    public ResponseEntity<?> uploadImage(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> uploadImage(@RequestParam("file") MultipartFile file,
+                                         @RequestParam(value = "waitMs", defaultValue = "0") long waitMs) {
         try {
             // Get current user
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
@@ -39,32 +68,33 @@ public class AnalysisController {
                 return ResponseEntity.badRequest().body(error);
             }
             
-            if (!isValidImageFile(file)) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Please upload a valid image file (JPEG, PNG, GIF)");
-                return ResponseEntity.badRequest().body(error);
-            }
+            // Queue analysis, cached images come back completed straight away
+            AnalysisSubmission submission = analysisService.analyzeImage(file, username);
             
-            // Process analysis
-            AnalysisResult result = analysisService.analyzeImage(file, username);
-            
-            // Prepare response
-            Map<String, Object> response = new HashMap<>();
-            response.put("id", result.getId());
-            response.put("label", result.getDetectionLabel().toString());
-            response.put("confidence", result.getConfidenceScore());
-            response.put("scores", result.getScores());
-            response.put("processingTime", result.getProcessingTimeMs());
-            response.put("modelVersion", result.getMlModelVersion());
-            response.put("openaiAnalysis", result.getOpenaiAnalysis());
-            response.put("createdAt", result.getCreatedAt());
+            // Callers that asked to wait share the in-flight computation for this image
+            if (!submission.isCompleted() && waitMs > 0) {
+                var awaited = analysisService.awaitResult(submission.getImageHash(),
+                        Duration.ofMillis(Math.min(waitMs, maxUploadWaitMs)));
+                if (awaited.isPresent()) {
+                    submission = AnalysisSubmission.completed(awaited.get());
+                }
+            }
             
-            return ResponseEntity.ok(response);
+            return toResponse(submission);
             
         } catch (IOException e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "Failed to process image: " + e.getMessage());
             return ResponseEntity.badRequest().body(error);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Interrupted while waiting for analysis");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(error);
+        } catch (RateLimitExceededException e) {
+            return rateLimited(e);
+        } catch (DownstreamUnavailableException e) {
+            return unavailable(e);
         } catch (RuntimeException e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", e.getMessage());
@@ -72,6 +102,120 @@ public class AnalysisController {
         }
     }
     
+    // Non-blocking variant of /upload: the servlet thread is released while the analysis runs
+    @PostMapping("/upload/async")
+    public Mono<ResponseEntity<?>> uploadImageAsync(@RequestParam("file") MultipartFile file,
+                                                    @RequestParam(value = "waitMs", defaultValue = "0") long waitMs) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String username = authentication.getName();
+        
+        if (file.isEmpty()) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Please select a file to upload");
+            return Mono.just(ResponseEntity.badRequest().body(error));
+        }
+        
+        Duration wait = Duration.ofMillis(Math.max(0, Math.min(waitMs, maxUploadWaitMs)));
+        return analysisService.analyzeImageAsync(file, username, wait)
+                .<ResponseEntity<?>>map(this::toResponse)
+                .onErrorResume(e -> {
+                    if (e instanceof RateLimitExceededException) {
+                        return Mono.just(rateLimited((RateLimitExceededException) e));
+                    }
+                    if (e instanceof DownstreamUnavailableException) {
+                        return Mono.just(unavailable((DownstreamUnavailableException) e));
+                    }
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", e instanceof IOException ? "Failed to process image: " + e.getMessage() : e.getMessage());
+                    return Mono.just(ResponseEntity.badRequest().body(error));
+                });
+    }
+    
+    // A whole gallery in one request: images and zip archives of images, one line per image as each one settles.
+    // Served as NDJSON, or as server-sent events when the client accepts text/event-stream
+    @PostMapping(value = "/upload/batch", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<Map<String, Object>> uploadImages(@RequestParam("files") List<MultipartFile> files) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String username = authentication.getName();
+        
+        return bulkAnalysisService.analyze(files, username)
+                .map(this::toResponse)
+                .onErrorResume(e -> {
+                    Map<String, Object> error = new HashMap<>();
+                    error.put("error", e instanceof IOException ? "Failed to process images: " + e.getMessage() : e.getMessage());
+                    return Mono.just(error);
+                });
+    }
+    
+    private Map<String, Object> toResponse(BulkAnalysisItem item) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("index", item.getIndex());
+        response.put("fileName", item.getFileName());
+        response.put("imageHash", item.getImageHash());
+        response.put("status", item.getStatus().toString());
+        if (item.getResult() != null) {
+            AnalysisResult result = item.getResult();
+            response.put("id", result.getId());
+            response.put("label", result.getDetectionLabel().toString());
+            response.put("confidence", result.getConfidenceScore());
+            response.put("scores", result.getScores());
+            response.put("processingTime", result.getProcessingTimeMs());
+            response.put("modelVersion", result.getMlModelVersion());
+            response.put("openaiAnalysis", result.getOpenaiAnalysis());
+            response.put("createdAt", result.getCreatedAt());
+        }
+        if (item.getError() != null) {
+            response.put("error", item.getError());
+        }
+        return response;
+    }
+    
+    private ResponseEntity<?> rateLimited(RateLimitExceededException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        error.put("retryAfterSeconds", e.getRetryAfterSeconds());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(error);
+    }
+    
+    private ResponseEntity<?> unavailable(DownstreamUnavailableException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        error.put("retryAfterSeconds", e.getRetryAfterSeconds());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(error);
+    }
+    
+    private ResponseEntity<?> toResponse(AnalysisSubmission submission) {
+        if (!submission.isCompleted()) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("jobId", submission.getJob().getId());
+            response.put("imageHash", submission.getImageHash());
+            response.put("status", submission.getStatus().toString());
+            response.put("scheduledAt", submission.getJob().getScheduledAt());
+            return ResponseEntity.accepted().body(response);
+        }
+        
+        AnalysisResult result = submission.getResult();
+        
+        // Prepare response
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", result.getId());
+        response.put("imageHash", result.getImageHash());
+        response.put("status", submission.getStatus().toString());
+        response.put("label", result.getDetectionLabel().toString());
+        response.put("confidence", result.getConfidenceScore());
+        response.put("scores", result.getScores());
+        response.put("processingTime", result.getProcessingTimeMs());
+        response.put("modelVersion", result.getMlModelVersion());
+        response.put("openaiAnalysis", result.getOpenaiAnalysis());
+        response.put("createdAt", result.getCreatedAt());
+        
+        return ResponseEntity.ok(response);
+    }
+    
     @GetMapping("/result/{imageHash}")
     public ResponseEntity<?> getAnalysisResult(@PathVariable String imageHash) {
         try {
@@ -104,6 +248,38 @@ public class AnalysisController {
         }
     }
     
+    // The OpenAI narrative is generated after the verdict, this streams it once it is ready
+    @GetMapping(value = "/result/{imageHash}/explanation", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamExplanation(@PathVariable String imageHash) {
+        return explanationService.watchExplanation(imageHash, maxExplanationWait)
+                .map(explanation -> ServerSentEvent.builder(explanation).event("explanation").build())
+                .defaultIfEmpty(ServerSentEvent.<String>builder().event("timeout").build())
+                .onErrorResume(e -> Mono.just(ServerSentEvent.builder(e.getMessage()).event("error").build()))
+                .flux();
+    }
+    
+    @GetMapping("/queue/{imageHash}")
+    public ResponseEntity<?> getQueueStatus(@PathVariable String imageHash) {
+        var job = analysisService.getQueueStatus(imageHash);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        AnalysisQueue queue = job.get();
+        Map<String, Object> response = new HashMap<>();
+        response.put("jobId", queue.getId());
+        response.put("imageHash", queue.getImageHash());
+        response.put("status", queue.getStatus().toString());
+        response.put("retryCount", queue.getRetryCount());
+        response.put("maxRetries", queue.getMaxRetries());
+        response.put("errorMessage", queue.getErrorMessage());
+        response.put("scheduledAt", queue.getScheduledAt());
+        response.put("startedAt", queue.getStartedAt());
+        response.put("completedAt", queue.getCompletedAt());
+        
+        return ResponseEntity.ok(response);
+    }
+    
     @GetMapping("/stats")
     public ResponseEntity<?> getAnalysisStats() {
         try {
@@ -135,18 +311,6 @@ public class AnalysisController {
         }
     }
     
-    private boolean isValidImageFile(MultipartFile file) {
-        String contentType = file.getContentType();
-        if (contentType == null) {
-            return false;
-        }
-        
-        return contentType.equals("image/jpeg") ||
-               contentType.equals("image/jpg") ||
-               contentType.equals("image/png") ||
-               contentType.equals("image/gif");
-    }
-    
     public static class SocialMediaRequest {
         private String fullName;
         private String[] platforms;
@@ -3,6 +3,7 @@ package com.isthispersonreal.api.controller;
 import com.isthispersonreal.api.model.User;
 import com.isthispersonreal.api.security.JwtTokenProvider;
 import com.isthispersonreal.api.service.UserService;
+import io.jsonwebtoken.Claims;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -62,7 +63,7 @@ public class AuthController {
             );
             
             // Generate token for new user
-            String jwt = tokenProvider.generateToken(user.getUsername());
+            String jwt = tokenProvider.generateToken(user);
             
             Map<String, Object> response = new HashMap<>();
             response.put("token", jwt);
@@ -81,14 +82,14 @@ public class AuthController {
     
     @PostMapping("/validate")
     public ResponseEntity<?> validateToken(@RequestBody TokenRequest tokenRequest) {
-        boolean isValid = tokenProvider.validateToken(tokenRequest.getToken());
+        Claims claims = tokenProvider.parseValidClaims(tokenRequest.getToken());
+        boolean isValid = claims != null;
         
         Map<String, Object> response = new HashMap<>();
         response.put("valid", isValid);
         
         if (isValid) {
-            String username = tokenProvider.getUsernameFromToken(tokenRequest.getToken());
-            response.put("username", username);
+            response.put("username", claims.getSubject());
         }
         
         return ResponseEntity.ok(response);
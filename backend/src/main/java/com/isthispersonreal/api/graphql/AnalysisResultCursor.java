@@ -0,0 +1,43 @@
+package com.isthispersonreal.api.graphql;
+
+import com.isthispersonreal.api.model.AnalysisResult;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+// Opaque connection cursor holding the (created_at, id) keyset position of a result
+public final class AnalysisResultCursor {
+    
+    private final LocalDateTime createdAt;
+    private final Long id;
+    
+    private AnalysisResultCursor(LocalDateTime createdAt, Long id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+    
+    public static String encode(AnalysisResult result) {
+        String position = result.getCreatedAt() + "|" + result.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public static AnalysisResultCursor decode(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.lastIndexOf('|');
+            return new AnalysisResultCursor(LocalDateTime.parse(position.substring(0, separator)),
+                    Long.valueOf(position.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public Long getId() {
+        return id;
+    }
+}
\ No newline at end of file
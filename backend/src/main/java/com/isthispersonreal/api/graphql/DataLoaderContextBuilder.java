@@ -0,0 +1,60 @@
+package com.isthispersonreal.api.graphql;
+
+import com.isthispersonreal.api.model.User;
+import com.isthispersonreal.api.repository.UserRepository;
+import graphql.kickstart.execution.context.GraphQLKickstartContext;
+import graphql.kickstart.servlet.context.DefaultGraphQLServletContextBuilder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.websocket.Session;
+import jakarta.websocket.server.HandshakeRequest;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderFactory;
+import org.dataloader.DataLoaderRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Per-request DataLoaders, so nested fields of a page resolve in one query per field instead of one per row
+@Component
+public class DataLoaderContextBuilder extends DefaultGraphQLServletContextBuilder {
+    
+    public static final String USER_LOADER = "user";
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Override
+    public GraphQLKickstartContext build(HttpServletRequest request, HttpServletResponse response) {
+        Map<Object, Object> context = new HashMap<>();
+        context.put(HttpServletRequest.class, request);
+        context.put(HttpServletResponse.class, response);
+        return GraphQLKickstartContext.of(buildRegistry(), context);
+    }
+    
+    @Override
+    public GraphQLKickstartContext build(Session session, HandshakeRequest handshakeRequest) {
+        Map<Object, Object> context = new HashMap<>();
+        context.put(Session.class, session);
+        context.put(HandshakeRequest.class, handshakeRequest);
+        return GraphQLKickstartContext.of(buildRegistry(), context);
+    }
+    
+    private DataLoaderRegistry buildRegistry() {
+        DataLoaderRegistry registry = new DataLoaderRegistry();
+        DataLoader<Long, User> users = DataLoaderFactory.newMappedDataLoader(this::loadUsers);
+        registry.register(USER_LOADER, users);
+        return registry;
+    }
+    
+    private CompletableFuture<Map<Long, User>> loadUsers(Set<Long> ids) {
+        return CompletableFuture.completedFuture(userRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity())));
+    }
+}
\ No newline at end of file
@@ -1,40 +1,118 @@
 package com.isthispersonreal.api.graphql;
 
+import com.isthispersonreal.api.model.AnalysisQueue;
 import com.isthispersonreal.api.model.AnalysisResult;
 import com.isthispersonreal.api.model.User;
+import com.isthispersonreal.api.model.UserAnalysisStats;
+import com.isthispersonreal.api.resilience.DownstreamUnavailableException;
+import com.isthispersonreal.api.resilience.RateLimitExceededException;
 import com.isthispersonreal.api.security.JwtTokenProvider;
 import com.isthispersonreal.api.service.AnalysisService;
+import com.isthispersonreal.api.service.AnalysisSubmission;
+import com.isthispersonreal.api.service.BulkAnalysisItem;
+import com.isthispersonreal.api.service.BulkAnalysisService;
+import com.isthispersonreal.api.service.UserAnalysisStatsService;
 import com.isthispersonreal.api.service.UserService;
+import graphql.GraphqlErrorException;
 import graphql.schema.DataFetchingEnvironment;
+import jakarta.servlet.http.HttpServletResponse;
+import org.dataloader.DataLoader;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Component
 public class GraphQLResolver {
     
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    
     @Autowired
     private AnalysisService analysisService;
     
+    @Autowired
+    private BulkAnalysisService bulkAnalysisService;
+    
     @Autowired
     private UserService userService;
     
+    @Autowired
+    private UserAnalysisStatsService userAnalysisStatsService;
+    
     @Autowired
     private JwtTokenProvider tokenProvider;
     
-    public AnalysisResult uploadImage(DataFetchingEnvironment env) throws Exception {
+    @Value("${analysis.upload.max-wait-ms}")
+    private long maxUploadWaitMs;
+    
+    public Map<String, Object> uploadImage(DataFetchingEnvironment env) throws Exception {
         MultipartFile file = env.getArgument("file");
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         String username = auth.getName();
         
-        return analysisService.analyzeImage(file, username);
+        AnalysisSubmission submission;
+        try {
+            submission = analysisService.analyzeImage(file, username);
+        } catch (RateLimitExceededException e) {
+            throw retryLater("RATE_LIMITED", e.getMessage(), e.getRetryAfterSeconds(), env);
+        } catch (DownstreamUnavailableException e) {
+            throw retryLater("SERVICE_UNAVAILABLE", e.getMessage(), e.getRetryAfterSeconds(), env);
+        }
+        
+        Integer waitMs = env.getArgument("waitMs");
+        if (!submission.isCompleted() && waitMs != null && waitMs > 0) {
+            Optional<AnalysisResult> awaited = analysisService.awaitResult(submission.getImageHash(),
+                    Duration.ofMillis(Math.min(waitMs, maxUploadWaitMs)));
+            if (awaited.isPresent()) {
+                submission = AnalysisSubmission.completed(awaited.get());
+            }
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("jobId", submission.getJob() != null ? submission.getJob().getId() : null);
+        response.put("imageHash", submission.getImageHash());
+        response.put("status", submission.getStatus().toString());
+        response.put("result", submission.getResult());
+        
+        return response;
+    }
+    
+    // GraphQL cannot stream the items, the list is returned once every image of the gallery has settled
+    public CompletableFuture<List<BulkAnalysisItem>> uploadImages(DataFetchingEnvironment env) {
+        List<MultipartFile> files = env.getArgument("files");
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        String username = auth.getName();
+        
+        return bulkAnalysisService.analyze(files, username)
+                .collectList()
+                .toFuture();
+    }
+    
+    // GraphQL answers 200 regardless, so the refusal travels as an error code plus the Retry-After header
+    private GraphqlErrorException retryLater(String code, String message, long retryAfterSeconds, DataFetchingEnvironment env) {
+        HttpServletResponse response = env.getGraphQlContext().get(HttpServletResponse.class);
+        if (response != null) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        }
+        Map<String, Object> extensions = new HashMap<>();
+        extensions.put("code", code);
+        extensions.put("retryAfterSeconds", retryAfterSeconds);
+        return GraphqlErrorException.newErrorException()
+                .message(message)
+                .extensions(extensions)
+                .build();
     }
     
     public Map<String, Object> registerUser(DataFetchingEnvironment env) {
@@ -44,7 +122,7 @@ public class GraphQLResolver {
         String password = (String) input.get("password");
         
         User user = userService.createUser(username, email, password, User.Role.USER);
-        String token = tokenProvider.generateToken(user.getUsername());
+        String token = tokenProvider.generateToken(user);
         
         Map<String, Object> response = new HashMap<>();
         response.put("token", token);
@@ -78,19 +156,78 @@ public class GraphQLResolver {
         return null; // Placeholder
     }
     
-    public List<AnalysisResult> analysisResults(DataFetchingEnvironment env) {
-        String userId = env.getArgument("userId");
-        Integer limit = env.getArgument("limit");
-        Integer offset = env.getArgument("offset");
+    // Keyset connection over (created_at, id), deep pages cost the same as the first one
+    public Map<String, Object> analysisResults(DataFetchingEnvironment env) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        User currentUser = userService.findByUsername(auth.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        
+        String userIdArgument = env.getArgument("userId");
+        Long userId = userIdArgument != null ? Long.valueOf(userIdArgument) : currentUser.getId();
+        if (!userId.equals(currentUser.getId()) && currentUser.getRole() != User.Role.ADMIN) {
+            throw new RuntimeException("Access denied");
+        }
         
-        // Implementation would fetch with pagination
-        return List.of(); // Placeholder
+        Integer first = env.getArgument("first");
+        int pageSize = first != null ? Math.max(1, Math.min(first, MAX_PAGE_SIZE)) : DEFAULT_PAGE_SIZE;
+        String after = env.getArgument("after");
+        
+        AnalysisResultCursor cursor = after != null ? AnalysisResultCursor.decode(after) : null;
+        List<AnalysisResult> rows = analysisService.getAnalysisResultsPage(userId,
+                cursor != null ? cursor.getCreatedAt() : null, cursor != null ? cursor.getId() : null, pageSize + 1);
+        boolean hasNextPage = rows.size() > pageSize;
+        List<AnalysisResult> page = hasNextPage ? rows.subList(0, pageSize) : rows;
+        
+        List<Map<String, Object>> edges = page.stream()
+                .map(result -> {
+                    Map<String, Object> edge = new HashMap<>();
+                    edge.put("cursor", AnalysisResultCursor.encode(result));
+                    edge.put("node", result);
+                    return edge;
+                })
+                .collect(Collectors.toList());
+        
+        Map<String, Object> pageInfo = new HashMap<>();
+        pageInfo.put("hasNextPage", hasNextPage);
+        pageInfo.put("endCursor", edges.isEmpty() ? null : edges.get(edges.size() - 1).get("cursor"));
+        
+        Map<String, Object> connection = new HashMap<>();
+        connection.put("edges", edges);
+        connection.put("pageInfo", pageInfo);
+        return connection;
     }
     
     public Map<String, Object> analysisStats(DataFetchingEnvironment env) {
         return analysisService.getAnalysisStats();
     }
     
+    public Map<String, Object> queueStatus(DataFetchingEnvironment env) {
+        String imageHash = env.getArgument("imageHash");
+        
+        Optional<AnalysisQueue> job = analysisService.getQueueStatus(imageHash);
+        if (job.isEmpty()) {
+            return null;
+        }
+        
+        AnalysisQueue queue = job.get();
+        Map<String, Object> status = new HashMap<>();
+        status.put("id", queue.getId());
+        status.put("imageHash", queue.getImageHash());
+        status.put("status", queue.getStatus().toString());
+        status.put("priority", queue.getPriority());
+        status.put("retryCount", queue.getRetryCount());
+        status.put("maxRetries", queue.getMaxRetries());
+        status.put("errorMessage", queue.getErrorMessage());
+        status.put("scheduledAt", queue.getScheduledAt().toString());
+        status.put("startedAt", queue.getStartedAt() != null ? queue.getStartedAt().toString() : null);
+        status.put("completedAt", queue.getCompletedAt() != null ? queue.getCompletedAt().toString() : null);
+        if (queue.getStatus() == AnalysisQueue.QueueStatus.COMPLETED) {
+            status.put("result", analysisService.getAnalysisResult(imageHash).orElse(null));
+        }
+        
+        return status;
+    }
+    
     public Map<String, Object> userProfile(DataFetchingEnvironment env) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         String username = auth.getName();
@@ -105,12 +242,34 @@ public class GraphQLResolver {
         profile.put("role", user.getRole().toString());
         profile.put("createdAt", user.getCreatedAt().toString());
         profile.put("lastLogin", user.getLastLogin() != null ? user.getLastLogin().toString() : null);
-        profile.put("analysisCount", analysisService.getAnalysisStats().get("total_analyses"));
-        profile.put("averageConfidence", 0.0); // Would calculate from user's analyses
+        
+        // One rollup row regardless of how many analyses the user has
+        Optional<UserAnalysisStats> stats = userAnalysisStatsService.findByUserId(user.getId());
+        profile.put("analysisCount", stats.map(UserAnalysisStats::getAnalysisCount).orElse(0L));
+        profile.put("averageConfidence", stats.map(UserAnalysisStats::getAverageConfidence).orElse(null));
+        profile.put("realCount", stats.map(UserAnalysisStats::getRealCount).orElse(0L));
+        profile.put("aiGeneratedCount", stats.map(UserAnalysisStats::getAiGeneratedCount).orElse(0L));
+        profile.put("uncertainCount", stats.map(UserAnalysisStats::getUncertainCount).orElse(0L));
+        profile.put("lastAnalysisAt", stats.map(UserAnalysisStats::getLastAnalysisAt).map(Object::toString).orElse(null));
         
         return profile;
     }
     
+    public String userId(AnalysisResult result) {
+        // Reading the id of the lazy proxy does not load the user row
+        return result.getUser() != null ? String.valueOf(result.getUser().getId()) : null;
+    }
+    
+    // Batched per request by the DataLoader, one query for all users on a page
+    public CompletableFuture<User> user(AnalysisResult result, DataFetchingEnvironment env) {
+        if (result.getUser() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        DataLoader<Long, User> users = env.getDataLoader(DataLoaderContextBuilder.USER_LOADER);
+        return users.load(result.getUser().getId());
+    }
+    
+    // Scores are stored inline with the row (score_vector) and need no extra query
     public List<Map<String, Object>> scores(AnalysisResult result) {
         if (result.getScores() == null) {
             return List.of();
@@ -4,11 +4,21 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "analysis_queue")
+@Table(name = "analysis_queue", indexes = {
+    // Lookups by image, and the unique constraint enqueueing races resolve against
+    @Index(name = "idx_analysis_queue_image_hash", columnList = "image_hash", unique = true),
+    // Claiming reads PENDING rows in this order, so it stops after the first matches instead of sorting
+    @Index(name = "idx_analysis_queue_status_priority_created", columnList = "status, priority DESC, created_at"),
+    @Index(name = "idx_analysis_queue_user_status", columnList = "user_id, status"),
+    // The reaper looks for PROCESSING rows whose lease ran out
+    @Index(name = "idx_analysis_queue_status_lease", columnList = "status, lease_expires_at")
+})
 public class AnalysisQueue {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "analysis_queue_id")
+    @TableGenerator(name = "analysis_queue_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "analysis_queue", allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -27,6 +37,9 @@ public class AnalysisQueue {
     @Column(name = "mime_type")
     private String mimeType;
     
+    @Column(name = "perceptual_hash")
+    private Long perceptualHash;
+    
     @Enumerated(EnumType.STRING)
     @Column(name = "status")
     private QueueStatus status;
@@ -53,6 +66,14 @@ public class AnalysisQueue {
     @Column(name = "completed_at")
     private LocalDateTime completedAt;
     
+    // Worker instance that owns the job while it is PROCESSING, and until when. The owner's heartbeat
+    // extends the lease, a lease left to run out means the owner is gone and the job is reclaimed
+    @Column(name = "lease_owner", length = 64)
+    private String leaseOwner;
+    
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+    
     @Column(name = "created_at")
     private LocalDateTime createdAt;
     
@@ -133,6 +154,14 @@ public class AnalysisQueue {
         this.mimeType = mimeType;
     }
     
+    public Long getPerceptualHash() {
+        return perceptualHash;
+    }
+    
+    public void setPerceptualHash(Long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+    
     public QueueStatus getStatus() {
         return status;
     }
@@ -197,6 +226,22 @@ public class AnalysisQueue {
         this.completedAt = completedAt;
     }
     
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+    
+    public void setLeaseOwner(String leaseOwner) {
+        this.leaseOwner = leaseOwner;
+    }
+    
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+    
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+    
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -5,11 +5,19 @@ import java.time.LocalDateTime;
 import java.util.Map;
 
 @Entity
-@Table(name = "analysis_results")
+@Table(name = "analysis_results", indexes = {
+    // Keyset pagination on (created_at, id), per user and across all results
+    @Index(name = "idx_analysis_results_user_created", columnList = "user_id, created_at, id"),
+    @Index(name = "idx_analysis_results_created", columnList = "created_at, id"),
+    // One row per image, a worker that loses the insert race settles its job with the winner's row
+    @Index(name = "idx_analysis_results_image_hash", columnList = "image_hash", unique = true)
+})
 public class AnalysisResult {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "analysis_results_id")
+    @TableGenerator(name = "analysis_results_id", table = IdGenerators.TABLE, pkColumnName = IdGenerators.NAME_COLUMN,
+            valueColumnName = IdGenerators.VALUE_COLUMN, pkColumnValue = "analysis_results", allocationSize = IdGenerators.ALLOCATION_SIZE)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -19,6 +27,10 @@ public class AnalysisResult {
     @Column(name = "image_hash")
     private String imageHash;
     
+    // 64-bit dHash used to recognise resized or recompressed copies of an analysed image
+    @Column(name = "perceptual_hash")
+    private Long perceptualHash;
+    
     @Column(name = "file_name")
     private String fileName;
     
@@ -35,11 +47,9 @@ public class AnalysisResult {
     @Column(name = "confidence_score")
     private Double confidenceScore;
     
-    @ElementCollection
-    @CollectionTable(name = "analysis_scores", 
-        joinColumns = @JoinColumn(name = "analysis_result_id"))
-    @MapKeyColumn(name = "score_type")
-    @Column(name = "score_value")
+    // Stored inline with the row, see ScoreVectorConverter
+    @Convert(converter = ScoreVectorConverter.class)
+    @Column(name = "score_vector", length = 255)
     private Map<String, Double> scores;
     
     @Column(name = "processing_time_ms")
@@ -110,6 +120,14 @@ public class AnalysisResult {
         this.imageHash = imageHash;
     }
     
+    public Long getPerceptualHash() {
+        return perceptualHash;
+    }
+    
+    public void setPerceptualHash(Long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+    }
+    
     public String getFileName() {
         return fileName;
     }
@@ -0,0 +1,59 @@
+package com.isthispersonreal.api.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// One row per running total, kept up to date by AnalysisStatsService so stats reads never scan the big tables
+@Entity
+@Table(name = "analysis_stats")
+public class AnalysisStat {
+    
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+    
+    @Column(name = "stat_value", nullable = false)
+    private Long value = 0L;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+    
+    // Constructors
+    public AnalysisStat() {}
+    
+    public AnalysisStat(String name, Long value) {
+        this.name = name;
+        this.value = value;
+    }
+    
+    // Getters and Setters
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public Long getValue() {
+        return value;
+    }
+    
+    public void setValue(Long value) {
+        this.value = value;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.isthispersonreal.api.model;
+
+import java.util.List;
+
+// Ids come from a shared table in blocks instead of AUTO_INCREMENT, so Hibernate knows them before the
+// INSERT and can send inserts as JDBC batches. One row per entity, keyed by its table name.
+public final class IdGenerators {
+    
+    public static final String TABLE = "id_generators";
+    public static final String NAME_COLUMN = "name";
+    public static final String VALUE_COLUMN = "next_val";
+    
+    // Ids handed to one instance per round trip to the generator table. Unused ids of a block are lost on restart.
+    public static final int ALLOCATION_SIZE = 50;
+    
+    // Tables whose ids come from here, each is also the name of its generator row
+    public static final List<String> TABLES = List.of("users", "analysis_queue", "analysis_results");
+    
+    private IdGenerators() {
+    }
+}
\ No newline at end of file
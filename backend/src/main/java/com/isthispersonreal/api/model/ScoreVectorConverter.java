@@ -0,0 +1,92 @@
+package com.isthispersonreal.api.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Packs the score map into one small binary column: a count, then per score a dictionary id
+// (or an inline name for unknown keys) and a float32 value
+@Converter
+public class ScoreVectorConverter implements AttributeConverter<Map<String, Double>, byte[]> {
+    
+    private static final byte VERSION = 1;
+    
+    // Append only, the position of a key is its id in stored rows
+    private static final List<String> DICTIONARY = List.of("REAL", "AI_GENERATED");
+    
+    private static final int INLINE_KEY = 0xFF;
+    
+    // The count is a single unsigned byte
+    private static final int MAX_SCORES = 0xFF;
+    
+    @Override
+    public byte[] convertToDatabaseColumn(Map<String, Double> scores) {
+        return encode(scores);
+    }
+    
+    @Override
+    public Map<String, Double> convertToEntityAttribute(byte[] data) {
+        return decode(data);
+    }
+    
+    public static byte[] encode(Map<String, Double> scores) {
+        if (scores == null) {
+            return null;
+        }
+        if (scores.size() > MAX_SCORES) {
+            throw new IllegalArgumentException("A score vector holds at most " + MAX_SCORES + " scores, got " + scores.size());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(2 + scores.size() * 5);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeByte(scores.size());
+            for (Map.Entry<String, Double> score : scores.entrySet()) {
+                int id = DICTIONARY.indexOf(score.getKey());
+                if (id >= 0) {
+                    out.writeByte(id);
+                } else {
+                    out.writeByte(INLINE_KEY);
+                    out.writeUTF(score.getKey());
+                }
+                // JSON integers such as 1 arrive as Integer despite the declared type
+                Object value = score.getValue();
+                out.writeFloat(value != null ? ((Number) value).floatValue() : Float.NaN);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    public static Map<String, Double> decode(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported score vector version");
+            }
+            int count = in.readUnsignedByte();
+            Map<String, Double> scores = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                int id = in.readUnsignedByte();
+                String key = id == INLINE_KEY ? in.readUTF() : DICTIONARY.get(id);
+                float value = in.readFloat();
+                // Widen through the decimal form so 0.93 reads back as 0.93 rather than 0.9300000071525574
+                scores.put(key, Float.isNaN(value) ? null : Double.parseDouble(Float.toString(value)));
+            }
+            return scores;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.isthispersonreal.api.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Per-user rollup of analysis results, written in the same transaction as each result insert
+@Entity
+@Table(name = "user_analysis_stats")
+public class UserAnalysisStats {
+    
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+    
+    @Column(name = "analysis_count", nullable = false)
+    private Long analysisCount = 0L;
+    
+    @Column(name = "confidence_sum", nullable = false)
+    private Double confidenceSum = 0.0;
+    
+    @Column(name = "real_count", nullable = false)
+    private Long realCount = 0L;
+    
+    @Column(name = "ai_generated_count", nullable = false)
+    private Long aiGeneratedCount = 0L;
+    
+    @Column(name = "uncertain_count", nullable = false)
+    private Long uncertainCount = 0L;
+    
+    @Column(name = "last_analysis_at")
+    private LocalDateTime lastAnalysisAt;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    // Constructors
+    public UserAnalysisStats() {}
+    
+    public Double getAverageConfidence() {
+        return analysisCount > 0 ? confidenceSum / analysisCount : null;
+    }
+    
+    // Getters and Setters
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+    
+    public Long getAnalysisCount() {
+        return analysisCount;
+    }
+    
+    public void setAnalysisCount(Long analysisCount) {
+        this.analysisCount = analysisCount;
+    }
+    
+    public Double getConfidenceSum() {
+        return confidenceSum;
+    }
+    
+    public void setConfidenceSum(Double confidenceSum) {
+        this.confidenceSum = confidenceSum;
+    }
+    
+    public Long getRealCount() {
+        return realCount;
+    }
+    
+    public void setRealCount(Long realCount) {
+        this.realCount = realCount;
+    }
+    
+    public Long getAiGeneratedCount() {
+        return aiGeneratedCount;
+    }
+    
+    public void setAiGeneratedCount(Long aiGeneratedCount) {
+        this.aiGeneratedCount = aiGeneratedCount;
+    }
+    
+    public Long getUncertainCount() {
+        return uncertainCount;
+    }
+    
+    public void setUncertainCount(Long uncertainCount) {
+        this.uncertainCount = uncertainCount;
+    }
+    
+    public LocalDateTime getLastAnalysisAt() {
+        return lastAnalysisAt;
+    }
+    
+    public void setLastAnalysisAt(LocalDateTime lastAnalysisAt) {
+        this.lastAnalysisAt = lastAnalysisAt;
+    }
+    
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
\ No newline at end of file
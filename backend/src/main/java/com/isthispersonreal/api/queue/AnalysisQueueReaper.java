@@ -0,0 +1,86 @@
+package com.isthispersonreal.api.queue;
+
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.service.AnalysisCoalescer;
+import com.isthispersonreal.api.service.ImageStorageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Returns jobs of crashed or partitioned workers to the queue once their lease runs out, so an image is
+// never stuck in PROCESSING. Every instance may run it, each reclaim is a conditional UPDATE that only
+// one of them wins.
+@Component
+@ConditionalOnProperty(name = "analysis.queue.lease.reaper-enabled", havingValue = "true", matchIfMissing = true)
+public class AnalysisQueueReaper {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisQueueReaper.class);
+    
+    @Autowired
+    private AnalysisQueueService analysisQueueService;
+    
+    @Autowired
+    private ImageStorageService imageStorageService;
+    
+    @Autowired
+    private AnalysisCoalescer analysisCoalescer;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${analysis.queue.lease.reap-batch-size}")
+    private int reapBatchSize;
+    
+    private Counter requeued;
+    private Counter deadLettered;
+    
+    @PostConstruct
+    public void init() {
+        requeued = Counter.builder("analysis.queue.reaped")
+                .tag("outcome", "requeued")
+                .register(meterRegistry);
+        deadLettered = Counter.builder("analysis.queue.reaped")
+                .tag("outcome", "dead_lettered")
+                .register(meterRegistry);
+    }
+    
+    @Scheduled(fixedDelayString = "${analysis.queue.lease.reap-interval-ms}")
+    public void reap() {
+        List<AnalysisQueue> expired;
+        try {
+            expired = analysisQueueService.findExpiredLeases(reapBatchSize);
+        } catch (Exception e) {
+            logger.warn("Failed to look for expired job leases: {}", e.getMessage());
+            return;
+        }
+        
+        for (AnalysisQueue job : expired) {
+            AnalysisQueue.QueueStatus reclaimed;
+            try {
+                reclaimed = analysisQueueService.reclaimExpired(job);
+            } catch (Exception e) {
+                logger.warn("Failed to reclaim job {}: {}", job.getId(), e.getMessage());
+                continue;
+            }
+            
+            if (reclaimed == AnalysisQueue.QueueStatus.PENDING) {
+                requeued.increment();
+                logger.info("Requeued job {} for {}, lease of {} expired", job.getId(), job.getImageHash(), job.getLeaseOwner());
+            } else if (reclaimed == AnalysisQueue.QueueStatus.FAILED) {
+                deadLettered.increment();
+                logger.warn("Dead-lettered job {} for {} after {} attempts", job.getId(), job.getImageHash(), job.getRetryCount() + 1);
+                imageStorageService.delete(job.getImageHash());
+                analysisCoalescer.fail(job.getImageHash(), new RuntimeException("Analysis abandoned after repeated worker failures"));
+            }
+        }
+    }
+}
\ No newline at end of file
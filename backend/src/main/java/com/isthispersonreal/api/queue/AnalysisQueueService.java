@@ -0,0 +1,194 @@
+package com.isthispersonreal.api.queue;
+
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.repository.AnalysisQueueRepository;
+import com.isthispersonreal.api.service.AnalysisStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+@Service
+public class AnalysisQueueService {
+    
+    @Autowired
+    private AnalysisQueueRepository analysisQueueRepository;
+    
+    @Autowired
+    private AnalysisStatsService analysisStatsService;
+    
+    @Value("${analysis.queue.retry-backoff-ms}")
+    private long retryBackoffMs;
+    
+    @Value("${analysis.queue.max-backoff-ms}")
+    private long maxBackoffMs;
+    
+    @Value("${analysis.queue.lease.duration}")
+    private Duration leaseDuration;
+    
+    // Lease owner id of this instance, a restarted instance does not inherit the leases of its previous run
+    private final String workerId = UUID.randomUUID().toString();
+    
+    public Optional<AnalysisQueue> findByImageHash(String imageHash) {
+        return analysisQueueRepository.findByImageHash(imageHash);
+    }
+    
+    @Transactional
+    public AnalysisQueue enqueue(AnalysisQueue job) {
+        AnalysisQueue saved = analysisQueueRepository.save(job);
+        analysisStatsService.recordTransition(null, saved.getStatus());
+        return saved;
+    }
+    
+    @Transactional
+    public AnalysisQueue requeue(AnalysisQueue job) {
+        // A previously failed or cancelled image was uploaded again, give it a fresh set of retries
+        LocalDateTime now = LocalDateTime.now();
+        if (analysisQueueRepository.requeue(job.getId(), job.getStatus(), job.getPerceptualHash(), now) == 0) {
+            // Moved on since it was read, report it as it is now
+            return analysisQueueRepository.findById(job.getId()).orElse(job);
+        }
+        analysisStatsService.recordTransition(job.getStatus(), AnalysisQueue.QueueStatus.PENDING);
+        job.setStatus(AnalysisQueue.QueueStatus.PENDING);
+        job.setRetryCount(0);
+        job.setErrorMessage(null);
+        job.setScheduledAt(now);
+        job.setStartedAt(null);
+        job.setCompletedAt(null);
+        job.setUpdatedAt(now);
+        return job;
+    }
+    
+    @Transactional
+    public List<AnalysisQueue> claimJobs(int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<AnalysisQueue> jobs = analysisQueueRepository.findPendingJobs(now, PageRequest.of(0, limit));
+        if (jobs.isEmpty()) {
+            return jobs;
+        }
+        
+        // The rows are locked by the select, one UPDATE moves them all; it also detaches them,
+        // so the fields set below are not written a second time by dirty checking
+        LocalDateTime leaseExpiresAt = now.plus(leaseDuration);
+        analysisQueueRepository.claim(jobs.stream().map(AnalysisQueue::getId).toList(), workerId, leaseExpiresAt, now);
+        for (AnalysisQueue job : jobs) {
+            analysisStatsService.recordTransition(job.getStatus(), AnalysisQueue.QueueStatus.PROCESSING);
+            job.setStatus(AnalysisQueue.QueueStatus.PROCESSING);
+            job.setStartedAt(now);
+            job.setLeaseOwner(workerId);
+            job.setLeaseExpiresAt(leaseExpiresAt);
+            job.setUpdatedAt(now);
+        }
+        return jobs;
+    }
+    
+    // Extends the leases of jobs this instance is working on, returns how many it still holds
+    @Transactional
+    public int renewLeases(Collection<Long> jobIds) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return analysisQueueRepository.renewLeases(jobIds, workerId, LocalDateTime.now().plus(leaseDuration));
+    }
+    
+    public List<AnalysisQueue> findExpiredLeases(int limit) {
+        LocalDateTime now = LocalDateTime.now();
+        return analysisQueueRepository.findExpiredLeases(now, now.minus(leaseDuration), PageRequest.of(0, limit));
+    }
+    
+    // Takes back a job whose owner stopped renewing its lease: requeued with backoff like a failed attempt,
+    // or dead-lettered as FAILED once retries run out. Returns the new status, null if the job had moved on
+    @Transactional
+    public AnalysisQueue.QueueStatus reclaimExpired(AnalysisQueue job) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime unleasedCutoff = now.minus(leaseDuration);
+        int attempt = job.getRetryCount() + 1;
+        if (attempt >= job.getMaxRetries()) {
+            String reason = "Worker lease expired on attempt " + attempt + " of " + job.getMaxRetries() + ", giving up";
+            if (analysisQueueRepository.deadLetterExpired(job.getId(), reason, now, unleasedCutoff) == 0) {
+                return null;
+            }
+            analysisStatsService.recordTransition(AnalysisQueue.QueueStatus.PROCESSING, AnalysisQueue.QueueStatus.FAILED);
+            return AnalysisQueue.QueueStatus.FAILED;
+        }
+        
+        String reason = "Worker lease expired on attempt " + attempt + " of " + job.getMaxRetries();
+        if (analysisQueueRepository.requeueExpired(job.getId(), reason,
+                now.plus(Duration.ofMillis(backoffMs(attempt))), now, unleasedCutoff) == 0) {
+            return null;
+        }
+        analysisStatsService.recordTransition(AnalysisQueue.QueueStatus.PROCESSING, AnalysisQueue.QueueStatus.PENDING);
+        return AnalysisQueue.QueueStatus.PENDING;
+    }
+    
+    // False when this instance no longer owns the job, its lease was reclaimed and the job is someone else's
+    @Transactional
+    public boolean markCompleted(AnalysisQueue job) {
+        return complete(job, () -> Boolean.TRUE).isPresent();
+    }
+    
+    // Completes the job and runs the caller's writes in the same transaction, only while this instance still
+    // owns it. The conditional UPDATE goes first and holds the row lock, so a reaper cannot reclaim the job
+    // in between, and a failed write rolls the completion back. Empty when ownership was lost: nothing was
+    // written and the caller must not touch the job's image, result or caches.
+    @Transactional
+    public <T> Optional<T> complete(AnalysisQueue job, Supplier<T> writes) {
+        LocalDateTime now = LocalDateTime.now();
+        if (analysisQueueRepository.markCompleted(job.getId(), AnalysisQueue.QueueStatus.PROCESSING, workerId, now) == 0) {
+            return Optional.empty();
+        }
+        T value = writes.get();
+        analysisStatsService.recordTransition(AnalysisQueue.QueueStatus.PROCESSING, AnalysisQueue.QueueStatus.COMPLETED);
+        analysisStatsService.recordProcessingTime(job.getCreatedAt(), now);
+        return Optional.of(value);
+    }
+    
+    // Puts a failed job back in the queue with exponential backoff, or marks it FAILED once retries run out.
+    // Returns false only when this call marked the job FAILED
+    @Transactional
+    public boolean markFailed(AnalysisQueue job, String errorMessage) {
+        LocalDateTime now = LocalDateTime.now();
+        int attempt = job.getRetryCount() + 1;
+        if (attempt >= job.getMaxRetries()) {
+            if (analysisQueueRepository.markAsFailed(job.getId(), AnalysisQueue.QueueStatus.PROCESSING, workerId, errorMessage, now) == 0) {
+                return true;
+            }
+            analysisStatsService.recordTransition(AnalysisQueue.QueueStatus.PROCESSING, AnalysisQueue.QueueStatus.FAILED);
+            return false;
+        }
+        
+        if (analysisQueueRepository.scheduleRetry(job.getId(), AnalysisQueue.QueueStatus.PROCESSING, workerId, errorMessage,
+                now.plus(Duration.ofMillis(backoffMs(attempt))), now) > 0) {
+            analysisStatsService.recordTransition(AnalysisQueue.QueueStatus.PROCESSING, AnalysisQueue.QueueStatus.PENDING);
+        }
+        return true;
+    }
+    
+    // Puts a job back without using up a retry, for when the downstream shed it rather than failed on it
+    @Transactional
+    public void defer(AnalysisQueue job, String reason, Duration delay) {
+        LocalDateTime now = LocalDateTime.now();
+        if (analysisQueueRepository.deferJob(job.getId(), AnalysisQueue.QueueStatus.PROCESSING, workerId, reason,
+                now.plus(delay), now) > 0) {
+            analysisStatsService.recordTransition(AnalysisQueue.QueueStatus.PROCESSING, AnalysisQueue.QueueStatus.PENDING);
+        }
+    }
+    
+    private long backoffMs(int attempt) {
+        long delay = retryBackoffMs << Math.min(attempt - 1, 20);
+        return Math.min(delay, maxBackoffMs);
+    }
+}
\ No newline at end of file
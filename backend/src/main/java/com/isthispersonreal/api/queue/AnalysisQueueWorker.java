@@ -0,0 +1,110 @@
+package com.isthispersonreal.api.queue;
+
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.service.AnalysisService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@ConditionalOnProperty(name = "analysis.queue.worker-enabled", havingValue = "true", matchIfMissing = true)
+public class AnalysisQueueWorker {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisQueueWorker.class);
+    
+    @Autowired
+    private AnalysisQueueService analysisQueueService;
+    
+    @Autowired
+    private AnalysisService analysisService;
+    
+    @Autowired
+    @Qualifier("analysisExecutor")
+    private AsyncTaskExecutor analysisExecutor;
+    
+    @Value("${analysis.queue.concurrency}")
+    private int concurrency;
+    
+    @Value("${analysis.queue.claim-batch-size}")
+    private int claimBatchSize;
+    
+    // Reactive jobs do not occupy an executor thread while waiting on the ML service and OpenAI
+    @Value("${analysis.queue.reactive}")
+    private boolean reactive;
+    
+    // Jobs claimed by this instance and not finished yet, their leases are renewed by the heartbeat
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    
+    @Scheduled(fixedDelayString = "${analysis.queue.poll-interval-ms}")
+    public void poll() {
+        int capacity = Math.min(claimBatchSize, concurrency - inFlight.size());
+        if (capacity <= 0) {
+            return;
+        }
+        
+        List<AnalysisQueue> jobs;
+        try {
+            jobs = analysisQueueService.claimJobs(capacity);
+        } catch (Exception e) {
+            logger.warn("Failed to claim analysis jobs: {}", e.getMessage());
+            return;
+        }
+        
+        for (AnalysisQueue job : jobs) {
+            Long jobId = job.getId();
+            inFlight.add(jobId);
+            if (reactive) {
+                analysisService.processJobAsync(job)
+                        .doFinally(signal -> inFlight.remove(jobId))
+                        .subscribe();
+                continue;
+            }
+            try {
+                analysisExecutor.execute(() -> {
+                    try {
+                        analysisService.processJob(job);
+                    } finally {
+                        inFlight.remove(jobId);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Not renewed from now on, the reaper hands the job out again once its lease runs out
+                inFlight.remove(jobId);
+                logger.warn("Failed to start analysis job {}: {}", jobId, e.getMessage());
+            }
+        }
+    }
+    
+    // One statement per instance and interval, however many jobs are in flight
+    @Scheduled(fixedDelayString = "${analysis.queue.lease.heartbeat-interval-ms}")
+    public void heartbeat() {
+        List<Long> jobIds = List.copyOf(inFlight);
+        if (jobIds.isEmpty()) {
+            return;
+        }
+        try {
+            int renewed = analysisQueueService.renewLeases(jobIds);
+            if (renewed < jobIds.size()) {
+                // Finished meanwhile, or reclaimed after a missed heartbeat; whatever this instance still does
+                // with a reclaimed job is discarded by the ownership check on its next transition
+                logger.debug("Renewed {} of {} job leases", renewed, jobIds.size());
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to renew job leases: {}", e.getMessage());
+        }
+    }
+    
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
\ No newline at end of file
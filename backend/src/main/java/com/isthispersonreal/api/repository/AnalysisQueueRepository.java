@@ -5,12 +5,17 @@ import com.isthispersonreal.api.model.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,11 +28,18 @@ public interface AnalysisQueueRepository extends JpaRepository<AnalysisQueue, Lo
     
     Optional<AnalysisQueue> findByImageHash(String imageHash);
     
-    @Query("SELECT aq FROM AnalysisQueue aq WHERE aq.status = 'PENDING' AND aq.retryCount < aq.maxRetries ORDER BY aq.priority DESC, aq.createdAt ASC")
-    List<AnalysisQueue> findPendingJobs();
+    List<AnalysisQueue> findByImageHashIn(Collection<String> imageHashes);
     
-    @Query("SELECT aq FROM AnalysisQueue aq WHERE aq.status = 'PROCESSING' AND aq.startedAt < :timeout")
-    List<AnalysisQueue> findStuckJobs(@Param("timeout") LocalDateTime timeout);
+    // Lock timeout -2 makes Hibernate emit FOR UPDATE SKIP LOCKED so concurrent workers claim disjoint rows
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT aq FROM AnalysisQueue aq WHERE aq.status = 'PENDING' AND aq.retryCount < aq.maxRetries AND aq.scheduledAt <= :now ORDER BY aq.priority DESC, aq.createdAt ASC")
+    List<AnalysisQueue> findPendingJobs(@Param("now") LocalDateTime now, Pageable pageable);
+    
+    // Rows claimed before leases existed have none, they count as expired once started before :unleasedCutoff
+    @Query("SELECT aq FROM AnalysisQueue aq WHERE aq.status = 'PROCESSING' AND (aq.leaseExpiresAt < :now OR (aq.leaseExpiresAt IS NULL AND aq.startedAt < :unleasedCutoff))")
+    List<AnalysisQueue> findExpiredLeases(@Param("now") LocalDateTime now, @Param("unleasedCutoff") LocalDateTime unleasedCutoff,
+                                          Pageable pageable);
     
     @Query("SELECT COUNT(aq) FROM AnalysisQueue aq WHERE aq.status = :status")
     long countByStatus(@Param("status") AnalysisQueue.QueueStatus status);
@@ -35,16 +47,64 @@ public interface AnalysisQueueRepository extends JpaRepository<AnalysisQueue, Lo
     @Query("SELECT COUNT(aq) FROM AnalysisQueue aq WHERE aq.user.id = :userId AND aq.status = 'PENDING'")
     long countPendingByUserId(@Param("userId") Long userId);
     
+    @Query("SELECT COUNT(aq) FROM AnalysisQueue aq WHERE aq.user.id = :userId AND aq.status IN ('PENDING', 'PROCESSING')")
+    long countActiveByUserId(@Param("userId") Long userId);
+    
     @Query("SELECT aq FROM AnalysisQueue aq WHERE aq.user.id = :userId AND aq.status IN ('PENDING', 'PROCESSING')")
     List<AnalysisQueue> findActiveJobsByUserId(@Param("userId") Long userId);
     
+    // State transitions are single conditional UPDATEs: 0 rows means the job was no longer in the expected
+    // state, somebody else moved it first, and the caller must leave it alone
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE AnalysisQueue aq SET aq.status = 'PROCESSING', aq.startedAt = :now, aq.leaseOwner = :owner, aq.leaseExpiresAt = :leaseExpiresAt, aq.updatedAt = :now WHERE aq.id IN :ids AND aq.status = 'PENDING'")
+    int claim(@Param("ids") Collection<Long> ids, @Param("owner") String owner,
+              @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt, @Param("now") LocalDateTime now);
+    
+    // Heartbeat, a job whose lease was reclaimed meanwhile is not renewed
+    @Modifying
+    @Query("UPDATE AnalysisQueue aq SET aq.leaseExpiresAt = :leaseExpiresAt WHERE aq.id IN :ids AND aq.status = 'PROCESSING' AND aq.leaseOwner = :owner")
+    int renewLeases(@Param("ids") Collection<Long> ids, @Param("owner") String owner,
+                    @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+    
+    @Modifying
+    @Query("UPDATE AnalysisQueue aq SET aq.status = 'PENDING', aq.retryCount = 0, aq.errorMessage = NULL, aq.perceptualHash = :perceptualHash, aq.scheduledAt = :now, aq.startedAt = NULL, aq.completedAt = NULL, aq.updatedAt = :now WHERE aq.id = :id AND aq.status = :expected")
+    int requeue(@Param("id") Long id, @Param("expected") AnalysisQueue.QueueStatus expected,
+                @Param("perceptualHash") Long perceptualHash, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE AnalysisQueue aq SET aq.status = 'COMPLETED', aq.errorMessage = NULL, aq.completedAt = :now, aq.leaseOwner = NULL, aq.leaseExpiresAt = NULL, aq.updatedAt = :now WHERE aq.id = :id AND aq.status = :expected AND aq.leaseOwner = :owner")
+    int markCompleted(@Param("id") Long id, @Param("expected") AnalysisQueue.QueueStatus expected, @Param("owner") String owner,
+                      @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE AnalysisQueue aq SET aq.status = 'FAILED', aq.errorMessage = :errorMessage, aq.leaseOwner = NULL, aq.leaseExpiresAt = NULL, aq.updatedAt = :now WHERE aq.id = :id AND aq.status = :expected AND aq.leaseOwner = :owner")
+    int markAsFailed(@Param("id") Long id, @Param("expected") AnalysisQueue.QueueStatus expected, @Param("owner") String owner,
+                     @Param("errorMessage") String errorMessage, @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE AnalysisQueue aq SET aq.retryCount = aq.retryCount + 1, aq.status = 'PENDING', aq.errorMessage = :errorMessage, aq.scheduledAt = :scheduledAt, aq.startedAt = NULL, aq.leaseOwner = NULL, aq.leaseExpiresAt = NULL, aq.updatedAt = :now WHERE aq.id = :id AND aq.status = :expected AND aq.leaseOwner = :owner")
+    int scheduleRetry(@Param("id") Long id, @Param("expected") AnalysisQueue.QueueStatus expected, @Param("owner") String owner,
+                      @Param("errorMessage") String errorMessage, @Param("scheduledAt") LocalDateTime scheduledAt,
+                      @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE AnalysisQueue aq SET aq.status = 'PENDING', aq.errorMessage = :errorMessage, aq.scheduledAt = :scheduledAt, aq.startedAt = NULL, aq.leaseOwner = NULL, aq.leaseExpiresAt = NULL, aq.updatedAt = :now WHERE aq.id = :id AND aq.status = :expected AND aq.leaseOwner = :owner")
+    int deferJob(@Param("id") Long id, @Param("expected") AnalysisQueue.QueueStatus expected, @Param("owner") String owner,
+                 @Param("errorMessage") String errorMessage, @Param("scheduledAt") LocalDateTime scheduledAt,
+                 @Param("now") LocalDateTime now);
+    
+    // Reclaiming a job whose lease ran out, only while it is still expired: a late heartbeat wins
     @Modifying
-    @Query("UPDATE AnalysisQueue aq SET aq.status = 'FAILED', aq.errorMessage = :errorMessage WHERE aq.id = :id")
-    void markAsFailed(@Param("id") Long id, @Param("errorMessage") String errorMessage);
+    @Query("UPDATE AnalysisQueue aq SET aq.retryCount = aq.retryCount + 1, aq.status = 'PENDING', aq.errorMessage = :errorMessage, aq.scheduledAt = :scheduledAt, aq.startedAt = NULL, aq.leaseOwner = NULL, aq.leaseExpiresAt = NULL, aq.updatedAt = :now "
+            + "WHERE aq.id = :id AND aq.status = 'PROCESSING' AND (aq.leaseExpiresAt < :now OR (aq.leaseExpiresAt IS NULL AND aq.startedAt < :unleasedCutoff))")
+    int requeueExpired(@Param("id") Long id, @Param("errorMessage") String errorMessage, @Param("scheduledAt") LocalDateTime scheduledAt,
+                       @Param("now") LocalDateTime now, @Param("unleasedCutoff") LocalDateTime unleasedCutoff);
     
     @Modifying
-    @Query("UPDATE AnalysisQueue aq SET aq.retryCount = aq.retryCount + 1, aq.status = 'PENDING' WHERE aq.id = :id")
-    void incrementRetryCount(@Param("id") Long id);
+    @Query("UPDATE AnalysisQueue aq SET aq.retryCount = aq.retryCount + 1, aq.status = 'FAILED', aq.errorMessage = :errorMessage, aq.leaseOwner = NULL, aq.leaseExpiresAt = NULL, aq.updatedAt = :now "
+            + "WHERE aq.id = :id AND aq.status = 'PROCESSING' AND (aq.leaseExpiresAt < :now OR (aq.leaseExpiresAt IS NULL AND aq.startedAt < :unleasedCutoff))")
+    int deadLetterExpired(@Param("id") Long id, @Param("errorMessage") String errorMessage,
+                          @Param("now") LocalDateTime now, @Param("unleasedCutoff") LocalDateTime unleasedCutoff);
     
     @Query("SELECT aq FROM AnalysisQueue aq WHERE aq.createdAt >= :since ORDER BY aq.createdAt DESC")
     List<AnalysisQueue> findRecentJobs(@Param("since") LocalDateTime since);
@@ -5,11 +5,14 @@ import com.isthispersonreal.api.model.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,6 +25,30 @@ public interface AnalysisResultRepository extends JpaRepository<AnalysisResult,
     
     boolean existsByImageHash(String imageHash);
     
+    List<AnalysisResult> findByImageHashIn(Collection<String> imageHashes);
+    
+    @Query("SELECT ar.imageHash FROM AnalysisResult ar WHERE ar.id = :id")
+    Optional<String> findImageHashById(@Param("id") Long id);
+    
+    @Transactional
+    @Modifying
+    @Query("UPDATE AnalysisResult ar SET ar.openaiAnalysis = :openaiAnalysis, ar.updatedAt = :now WHERE ar.id = :id")
+    int updateOpenaiAnalysis(@Param("id") Long id, @Param("openaiAnalysis") String openaiAnalysis,
+                             @Param("now") LocalDateTime now);
+    
+    // Keyset pages in insertion time order, ids are pooled per instance and say nothing about the order
+    @Query("SELECT ar.id, ar.perceptualHash, ar.createdAt FROM AnalysisResult ar WHERE ar.perceptualHash IS NOT NULL AND (ar.createdAt > :createdAt OR (ar.createdAt = :createdAt AND ar.id > :id)) ORDER BY ar.createdAt, ar.id")
+    List<Object[]> findPerceptualHashesAfter(@Param("createdAt") LocalDateTime createdAt, @Param("id") Long id,
+                                             Pageable pageable);
+    
+    // Keyset pages, newest first; fetch one row more than the page size to know whether another page exists
+    @Query("SELECT ar FROM AnalysisResult ar WHERE ar.user.id = :userId ORDER BY ar.createdAt DESC, ar.id DESC")
+    List<AnalysisResult> findPageByUserId(@Param("userId") Long userId, Pageable pageable);
+    
+    @Query("SELECT ar FROM AnalysisResult ar WHERE ar.user.id = :userId AND (ar.createdAt < :createdAt OR (ar.createdAt = :createdAt AND ar.id < :id)) ORDER BY ar.createdAt DESC, ar.id DESC")
+    List<AnalysisResult> findPageByUserIdAfter(@Param("userId") Long userId, @Param("createdAt") LocalDateTime createdAt,
+                                               @Param("id") Long id, Pageable pageable);
+    
     @Query("SELECT ar FROM AnalysisResult ar WHERE ar.user.id = :userId AND ar.createdAt >= :since")
     List<AnalysisResult> findByUserIdAndCreatedAfter(@Param("userId") Long userId, 
                                                     @Param("since") LocalDateTime since);
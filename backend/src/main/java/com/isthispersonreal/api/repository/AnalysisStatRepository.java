@@ -0,0 +1,21 @@
+package com.isthispersonreal.api.repository;
+
+import com.isthispersonreal.api.model.AnalysisStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface AnalysisStatRepository extends JpaRepository<AnalysisStat, String> {
+    
+    // Relative update so several instances can flush into the same row without reading it first
+    @Transactional
+    @Modifying
+    @Query("UPDATE AnalysisStat s SET s.value = s.value + :delta, s.updatedAt = :now WHERE s.name = :name")
+    int increment(@Param("name") String name, @Param("delta") long delta, @Param("now") LocalDateTime now);
+}
\ No newline at end of file
@@ -0,0 +1,40 @@
+package com.isthispersonreal.api.repository;
+
+import com.isthispersonreal.api.model.UserAnalysisStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface UserAnalysisStatsRepository extends JpaRepository<UserAnalysisStats, Long> {
+    
+    // Upsert under the row lock of the user's rollup, concurrent results for one user serialize here only
+    @Modifying
+    @Query(value = "INSERT INTO user_analysis_stats (user_id, analysis_count, confidence_sum, real_count, ai_generated_count, uncertain_count, last_analysis_at, updated_at) "
+            + "VALUES (:userId, :count, :confidence, :real, :aiGenerated, :uncertain, :analyzedAt, :analyzedAt) "
+            + "ON DUPLICATE KEY UPDATE analysis_count = analysis_count + VALUES(analysis_count), confidence_sum = confidence_sum + VALUES(confidence_sum), "
+            + "real_count = real_count + VALUES(real_count), ai_generated_count = ai_generated_count + VALUES(ai_generated_count), "
+            + "uncertain_count = uncertain_count + VALUES(uncertain_count), "
+            + "last_analysis_at = GREATEST(COALESCE(last_analysis_at, VALUES(last_analysis_at)), VALUES(last_analysis_at)), "
+            + "updated_at = VALUES(updated_at)", nativeQuery = true)
+    void recordAnalysis(@Param("userId") Long userId, @Param("count") int count, @Param("confidence") double confidence,
+                        @Param("real") int real, @Param("aiGenerated") int aiGenerated,
+                        @Param("uncertain") int uncertain, @Param("analyzedAt") LocalDateTime analyzedAt);
+    
+    // Builds rollups for users whose results predate the table, users that already have a row are left alone
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO user_analysis_stats (user_id, analysis_count, confidence_sum, real_count, ai_generated_count, uncertain_count, last_analysis_at, updated_at) "
+            + "SELECT ar.user_id, COUNT(*), COALESCE(SUM(ar.confidence_score), 0), "
+            + "SUM(ar.detection_label = 'REAL'), SUM(ar.detection_label = 'AI_GENERATED'), SUM(ar.detection_label = 'UNCERTAIN'), "
+            + "MAX(ar.created_at), NOW() "
+            + "FROM analysis_results ar WHERE ar.user_id IS NOT NULL "
+            + "AND NOT EXISTS (SELECT 1 FROM user_analysis_stats s WHERE s.user_id = ar.user_id) "
+            + "GROUP BY ar.user_id", nativeQuery = true)
+    int backfillMissing();
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+package com.isthispersonreal.api.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Vegas-style concurrency limit discovery. The lowest latency seen approximates the downstream with no
+// queue; limit * (1 - minRtt / rtt) then estimates how many of our calls are queued over there. The
+// limit grows while that queue is short, shrinks when it grows and backs off sharply on failures.
+public class AdaptiveLimiter {
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final int probeInterval;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    
+    // Only taken to fold in a sample, never while calling out
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private volatile double limit;
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samplesSinceProbe;
+    
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, int probeInterval) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.probeInterval = probeInterval;
+    }
+    
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+    
+    public void onSuccess(long rttNanos) {
+        inFlight.decrementAndGet();
+        lock.lock();
+        try {
+            // Forget the old baseline now and then, the downstream may have been redeployed or rescaled
+            if (++samplesSinceProbe >= probeInterval) {
+                samplesSinceProbe = 0;
+                minRttNanos = rttNanos;
+            }
+            minRttNanos = Math.min(minRttNanos, rttNanos);
+            
+            double current = limit;
+            double queued = current * (1 - (double) minRttNanos / rttNanos);
+            double step = Math.max(1, Math.log10(current));
+            if (queued < 3 * step) {
+                current += step;
+            } else if (queued > 6 * step) {
+                current -= step;
+            }
+            limit = clamp(current);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void onDropped() {
+        inFlight.decrementAndGet();
+        lock.lock();
+        try {
+            limit = clamp(limit * 0.9);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Cancelled calls say nothing about the downstream
+    public void onIgnored() {
+        inFlight.decrementAndGet();
+    }
+    
+    public int getLimit() {
+        return (int) limit;
+    }
+    
+    public int getInFlight() {
+        return inFlight.get();
+    }
+    
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+package com.isthispersonreal.api.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Caps concurrent calls into one downstream, callers over the limit wait up to maxWait and are then rejected
+public class Bulkhead {
+    
+    private final String name;
+    private final int maxConcurrent;
+    private final Duration maxWait;
+    private final Semaphore permits;
+    
+    public Bulkhead(String name, int maxConcurrent, Duration maxWait) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWait = maxWait;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+    
+    public void acquire() {
+        try {
+            if (!permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new BulkheadFullException(name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BulkheadFullException(name);
+        }
+    }
+    
+    public void release() {
+        permits.release();
+    }
+    
+    public <T> T call(Callable<T> call) throws Exception {
+        acquire();
+        try {
+            return call.call();
+        } finally {
+            release();
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+    
+    public int getAvailable() {
+        return permits.availablePermits();
+    }
+    
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,67 @@
+package com.isthispersonreal.api.resilience;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Holds a bulkhead permit for as long as a connection is checked out, so callers queue in front of
+// the pool with a bounded wait instead of piling up inside Hikari
+public class BulkheadDataSource extends DelegatingDataSource {
+    
+    private final Supplier<Bulkhead> bulkhead;
+    
+    public BulkheadDataSource(DataSource target, Supplier<Bulkhead> bulkhead) {
+        super(target);
+        this.bulkhead = bulkhead;
+    }
+    
+    @Override
+    public Connection getConnection() throws SQLException {
+        Bulkhead permits = bulkhead.get();
+        permits.acquire();
+        try {
+            return guard(super.getConnection(), permits);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Bulkhead permits = bulkhead.get();
+        permits.acquire();
+        try {
+            return guard(super.getConnection(username, password), permits);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    private Connection guard(Connection connection, Bulkhead permits) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName()) && released.compareAndSet(false, true)) {
+                        try {
+                            connection.close();
+                        } finally {
+                            permits.release();
+                        }
+                        return null;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,8 @@
+package com.isthispersonreal.api.resilience;
+
+public class BulkheadFullException extends RuntimeException {
+    
+    public BulkheadFullException(String name) {
+        super("Too many concurrent calls to " + name + ", please retry");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,73 @@
+package com.isthispersonreal.api.resilience;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One bulkhead per downstream, so cheap virtual threads cannot pile unbounded load onto MySQL,
+// the ML service or OpenAI
+@Component
+public class BulkheadRegistry {
+    
+    public static final String DATABASE = "database";
+    public static final String ML_SERVICE = "ml-service";
+    public static final String OPENAI = "openai";
+    public static final String IMAGE_DECODER = "image-decoder";
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${resilience.bulkhead.database.max-concurrent}")
+    private int databaseMaxConcurrent;
+    
+    @Value("${resilience.bulkhead.ml-service.max-concurrent}")
+    private int mlServiceMaxConcurrent;
+    
+    @Value("${resilience.bulkhead.openai.max-concurrent}")
+    private int openaiMaxConcurrent;
+    
+    @Value("${resilience.bulkhead.max-wait}")
+    private Duration maxWait;
+    
+    // Full image decodes are what bound ingest memory, callers over the limit wait briefly then skip the decode
+    @Value("${resilience.bulkhead.image-decoder.max-concurrent}")
+    private int imageDecoderMaxConcurrent;
+    
+    @Value("${resilience.bulkhead.image-decoder.max-wait}")
+    private Duration imageDecoderMaxWait;
+    
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        register(new Bulkhead(DATABASE, databaseMaxConcurrent, maxWait));
+        register(new Bulkhead(ML_SERVICE, mlServiceMaxConcurrent, maxWait));
+        register(new Bulkhead(OPENAI, openaiMaxConcurrent, maxWait));
+        register(new Bulkhead(IMAGE_DECODER, imageDecoderMaxConcurrent, imageDecoderMaxWait));
+    }
+    
+    public Bulkhead get(String name) {
+        Bulkhead bulkhead = bulkheads.get(name);
+        if (bulkhead == null) {
+            throw new IllegalArgumentException("Unknown bulkhead: " + name);
+        }
+        return bulkhead;
+    }
+    
+    private void register(Bulkhead bulkhead) {
+        bulkheads.put(bulkhead.getName(), bulkhead);
+        Gauge.builder("bulkhead.available", bulkhead, Bulkhead::getAvailable)
+                .tag("name", bulkhead.getName())
+                .register(meterRegistry);
+        Gauge.builder("bulkhead.waiting", bulkhead, Bulkhead::getWaiting)
+                .tag("name", bulkhead.getName())
+                .register(meterRegistry);
+    }
+}
\ No newline at end of file
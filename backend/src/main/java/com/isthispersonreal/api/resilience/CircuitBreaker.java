@@ -0,0 +1,148 @@
+package com.isthispersonreal.api.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Count-based circuit breaker: opens when the failure rate over the last windowSize calls crosses the
+// threshold, rejects everything for openDuration, then lets a few trial calls decide whether to close
+public class CircuitBreaker {
+    
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+    
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final Duration openDuration;
+    private final int halfOpenCalls;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    
+    private final boolean[] outcomes;
+    private int recorded;
+    private int next;
+    private int failures;
+    
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+    
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+                          Duration openDuration, int halfOpenCalls) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = openDuration;
+        this.halfOpenCalls = halfOpenCalls;
+        this.outcomes = new boolean[windowSize];
+    }
+    
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < openDuration.toNanos()) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsStarted >= halfOpenCalls) {
+                    return false;
+                }
+                trialsStarted++;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public void onSuccess() {
+        record(false);
+    }
+    
+    public void onFailure() {
+        record(true);
+    }
+    
+    // A trial call that was cancelled frees its slot without deciding anything
+    public void onIgnored() {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && trialsStarted > 0) {
+                trialsStarted--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    public Duration getRemainingOpen() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        long remaining = openDuration.toNanos() - (System.nanoTime() - openedAt);
+        return Duration.ofNanos(Math.max(0, remaining));
+    }
+    
+    private void record(boolean failed) {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                if (failed) {
+                    open();
+                } else if (++trialsSucceeded >= halfOpenCalls) {
+                    reset();
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                // A call admitted before the circuit opened
+                return;
+            }
+            
+            if (recorded == windowSize && outcomes[next]) {
+                failures--;
+            }
+            outcomes[next] = failed;
+            if (failed) {
+                failures++;
+            }
+            next = (next + 1) % windowSize;
+            recorded = Math.min(recorded + 1, windowSize);
+            
+            if (recorded >= minimumCalls && (double) failures / recorded >= failureRateThreshold) {
+                open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+    
+    private void reset() {
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.isthispersonreal.api.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Circuit breaker in front of an adaptive concurrency limit. Both reject without waiting, so a slow
+// downstream costs callers a fast 503 instead of a thread parked for the whole timeout.
+public class DownstreamGuard {
+    
+    private final String name;
+    private final CircuitBreaker circuitBreaker;
+    private final AdaptiveLimiter limiter;
+    private final Counter circuitRejections;
+    private final Counter limitRejections;
+    
+    public DownstreamGuard(String name, CircuitBreaker circuitBreaker, AdaptiveLimiter limiter,
+                           Counter circuitRejections, Counter limitRejections) {
+        this.name = name;
+        this.circuitBreaker = circuitBreaker;
+        this.limiter = limiter;
+        this.circuitRejections = circuitRejections;
+        this.limitRejections = limitRejections;
+    }
+    
+    public <T> Mono<T> protect(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                circuitRejections.increment();
+                return Mono.error(circuitOpen());
+            }
+            if (!limiter.tryAcquire()) {
+                circuitBreaker.onIgnored();
+                limitRejections.increment();
+                return Mono.error(new DownstreamUnavailableException(name, "concurrency limit reached", Duration.ofSeconds(1)));
+            }
+            
+            long start = System.nanoTime();
+            AtomicBoolean failed = new AtomicBoolean();
+            return call.get()
+                    .doOnError(e -> failed.set(isDownstreamFailure(e)))
+                    .doFinally(signal -> {
+                        if (signal == SignalType.CANCEL) {
+                            limiter.onIgnored();
+                            circuitBreaker.onIgnored();
+                        } else if (failed.get()) {
+                            limiter.onDropped();
+                            circuitBreaker.onFailure();
+                        } else {
+                            limiter.onSuccess(System.nanoTime() - start);
+                            circuitBreaker.onSuccess();
+                        }
+                    });
+        });
+    }
+    
+    // For callers that would only queue work for this downstream, fail them up front while it is down.
+    // Once the open period has passed the work is let through, the first protected call then starts the trial.
+    public void checkAvailable() {
+        if (!circuitBreaker.getRemainingOpen().isZero()) {
+            circuitRejections.increment();
+            throw circuitOpen();
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+    
+    public AdaptiveLimiter getLimiter() {
+        return limiter;
+    }
+    
+    // A rejected request still means the downstream answered, except when it is asking us to back off
+    public static boolean isDownstreamFailure(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            HttpStatusCode status = ((WebClientResponseException) e).getStatusCode();
+            return !status.is4xxClientError() || status.value() == 429;
+        }
+        return true;
+    }
+    
+    private DownstreamUnavailableException circuitOpen() {
+        Duration remaining = circuitBreaker.getRemainingOpen();
+        return new DownstreamUnavailableException(name, "circuit open",
+                remaining.isZero() ? Duration.ofSeconds(1) : remaining);
+    }
+}
\ No newline at end of file
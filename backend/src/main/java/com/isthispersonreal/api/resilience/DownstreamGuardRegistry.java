@@ -0,0 +1,92 @@
+package com.isthispersonreal.api.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One guard per remote service, named like the bulkheads; limits and circuit states are published as
+// downstream.* meters under /actuator/metrics and /actuator/prometheus
+@Component
+public class DownstreamGuardRegistry {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${resilience.adaptive-limit.initial-limit}")
+    private int initialLimit;
+    
+    @Value("${resilience.adaptive-limit.min-limit}")
+    private int minLimit;
+    
+    @Value("${resilience.adaptive-limit.max-limit}")
+    private int maxLimit;
+    
+    @Value("${resilience.adaptive-limit.probe-interval}")
+    private int probeInterval;
+    
+    @Value("${resilience.circuit-breaker.window-size}")
+    private int windowSize;
+    
+    @Value("${resilience.circuit-breaker.minimum-calls}")
+    private int minimumCalls;
+    
+    @Value("${resilience.circuit-breaker.failure-rate-threshold}")
+    private double failureRateThreshold;
+    
+    @Value("${resilience.circuit-breaker.open-duration}")
+    private Duration openDuration;
+    
+    @Value("${resilience.circuit-breaker.half-open-calls}")
+    private int halfOpenCalls;
+    
+    private final Map<String, DownstreamGuard> guards = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        register(BulkheadRegistry.ML_SERVICE);
+        register(BulkheadRegistry.OPENAI);
+    }
+    
+    public DownstreamGuard get(String name) {
+        DownstreamGuard guard = guards.get(name);
+        if (guard == null) {
+            throw new IllegalArgumentException("Unknown downstream: " + name);
+        }
+        return guard;
+    }
+    
+    private void register(String name) {
+        DownstreamGuard guard = new DownstreamGuard(name,
+                new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, openDuration, halfOpenCalls),
+                new AdaptiveLimiter(initialLimit, minLimit, maxLimit, probeInterval),
+                rejections(name, "circuit_open"),
+                rejections(name, "limit"));
+        guards.put(name, guard);
+        
+        Gauge.builder("downstream.limit", guard.getLimiter(), AdaptiveLimiter::getLimit)
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("downstream.in_flight", guard.getLimiter(), AdaptiveLimiter::getInFlight)
+                .tag("name", name)
+                .register(meterRegistry);
+        // 0 closed, 1 open, 2 half open
+        Gauge.builder("downstream.circuit.state", guard.getCircuitBreaker(), breaker -> breaker.getState().ordinal())
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+    
+    private Counter rejections(String name, String reason) {
+        return Counter.builder("downstream.rejected")
+                .tag("name", name)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.isthispersonreal.api.resilience;
+
+import java.time.Duration;
+
+// A call was shed before reaching the downstream, callers should answer 503 rather than wait
+public class DownstreamUnavailableException extends RuntimeException {
+    
+    private final Duration retryAfter;
+    
+    public DownstreamUnavailableException(String name, String reason, Duration retryAfter) {
+        super(name + " is unavailable (" + reason + "), please retry later");
+        this.retryAfter = retryAfter;
+    }
+    
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+    
+    // Whole seconds for the Retry-After header, never 0
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
\ No newline at end of file
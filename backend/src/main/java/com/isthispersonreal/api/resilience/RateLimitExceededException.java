@@ -0,0 +1,22 @@
+package com.isthispersonreal.api.resilience;
+
+import java.time.Duration;
+
+public class RateLimitExceededException extends RuntimeException {
+    
+    private final Duration retryAfter;
+    
+    public RateLimitExceededException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+    
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+    
+    // Whole seconds for the Retry-After header, never 0
+    public long getRetryAfterSeconds() {
+        return Math.max(1, (retryAfter.toMillis() + 999) / 1000);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,220 @@
+package com.isthispersonreal.api.resilience;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.isthispersonreal.api.model.User;
+import com.isthispersonreal.api.repository.AnalysisQueueRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Per-user upload limits: a token bucket shared by all instances through Redis, plus a cap per role on
+// queued and processing jobs. Each Redis round trip takes up to `prefetch` tokens that are then spent
+// locally with a CAS, and a user Redis has turned away is rejected locally until their next token is due.
+@Component
+public class UploadRateLimiter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UploadRateLimiter.class);
+    
+    private static final String KEY_PREFIX = "ratelimit:upload:";
+    
+    // Refills the bucket for the elapsed time, then grants up to ARGV[4] tokens.
+    // Returns {granted, ms until the next token when nothing was granted}.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> TAKE_SCRIPT = new DefaultRedisScript<>(
+            "local capacity = tonumber(ARGV[1]) "
+                    + "local rate = tonumber(ARGV[2]) "
+                    + "local now = tonumber(ARGV[3]) "
+                    + "local state = redis.call('hmget', KEYS[1], 'tokens', 'ts') "
+                    + "local tokens = tonumber(state[1]) or capacity "
+                    + "local ts = tonumber(state[2]) or now "
+                    + "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate) "
+                    + "local granted = math.min(tonumber(ARGV[4]), math.floor(tokens)) "
+                    + "tokens = tokens - granted "
+                    + "redis.call('hset', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(now)) "
+                    + "redis.call('pexpire', KEYS[1], math.ceil(capacity / rate)) "
+                    + "if granted > 0 then return {granted, 0} end "
+                    + "return {0, math.ceil((1 - tokens) / rate)}",
+            List.class);
+    
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    
+    @Autowired
+    private AnalysisQueueRepository analysisQueueRepository;
+    
+    @Value("${analysis.rate-limit.enabled}")
+    private boolean enabled;
+    
+    @Value("${analysis.rate-limit.capacity}")
+    private int capacity;
+    
+    @Value("${analysis.rate-limit.refill-per-minute}")
+    private double refillPerMinute;
+    
+    @Value("${analysis.rate-limit.prefetch}")
+    private int prefetch;
+    
+    @Value("${analysis.rate-limit.prefetch-ttl}")
+    private Duration prefetchTtl;
+    
+    @Value("${analysis.rate-limit.max-in-flight.user}")
+    private int userMaxInFlight;
+    
+    @Value("${analysis.rate-limit.max-in-flight.moderator}")
+    private int moderatorMaxInFlight;
+    
+    @Value("${analysis.rate-limit.max-in-flight.admin}")
+    private int adminMaxInFlight;
+    
+    // Tokens already taken from Redis, dropped unused after prefetchTtl so a node cannot bank them
+    private Cache<String, AtomicInteger> prefetched;
+    
+    // Epoch millis before which Redis will not have a token for the user
+    private Cache<String, Long> blockedUntil;
+    
+    @PostConstruct
+    public void init() {
+        prefetched = Caffeine.newBuilder()
+                .expireAfterWrite(prefetchTtl)
+                .build();
+        blockedUntil = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis((long) Math.ceil(60000 / refillPerMinute)))
+                .build();
+    }
+    
+    // The in-flight cap is checked first, an upload it rejects must not cost the user a token
+    public void acquire(User user) {
+        if (!enabled) {
+            return;
+        }
+        checkInFlight(user);
+        takeToken(user.getUsername());
+    }
+    
+    // Gallery uploads: grants up to images tokens and returns how many. Bulk requests create no queue rows,
+    // so the in-flight cap does not apply, their size is bounded by analysis.bulk.max-images instead
+    public int acquire(User user, int images) {
+        if (!enabled || images <= 0) {
+            return images;
+        }
+        String username = user.getUsername();
+        int granted = 0;
+        AtomicInteger local = prefetched.getIfPresent(username);
+        while (granted < images && local != null && decrementIfPositive(local)) {
+            granted++;
+        }
+        if (granted == images) {
+            return granted;
+        }
+        
+        long now = System.currentTimeMillis();
+        Long blocked = blockedUntil.getIfPresent(username);
+        if (blocked != null && blocked > now) {
+            return granted;
+        }
+        
+        List<?> reply;
+        try {
+            reply = redisTemplate.execute(TAKE_SCRIPT, List.of(KEY_PREFIX + username),
+                    String.valueOf(capacity), String.valueOf(refillPerMinute / 60000), String.valueOf(now),
+                    String.valueOf(images - granted));
+        } catch (RuntimeException e) {
+            logger.debug("Rate limit check unavailable for {}: {}", username, e.getMessage());
+            return images;
+        }
+        
+        long taken = ((Number) reply.get(0)).longValue();
+        if (taken == 0) {
+            blockedUntil.put(username, now + ((Number) reply.get(1)).longValue());
+        }
+        return granted + (int) taken;
+    }
+    
+    private void takeToken(String username) {
+        AtomicInteger local = prefetched.getIfPresent(username);
+        if (local != null && decrementIfPositive(local)) {
+            return;
+        }
+        
+        long now = System.currentTimeMillis();
+        Long blocked = blockedUntil.getIfPresent(username);
+        if (blocked != null && blocked > now) {
+            throw limited(blocked - now);
+        }
+        
+        List<?> reply;
+        try {
+            reply = redisTemplate.execute(TAKE_SCRIPT, List.of(KEY_PREFIX + username),
+                    String.valueOf(capacity), String.valueOf(refillPerMinute / 60000), String.valueOf(now),
+                    String.valueOf(Math.max(1, prefetch)));
+        } catch (RuntimeException e) {
+            // Without Redis only the in-flight cap applies
+            logger.debug("Rate limit check unavailable for {}: {}", username, e.getMessage());
+            return;
+        }
+        
+        long granted = ((Number) reply.get(0)).longValue();
+        if (granted == 0) {
+            long waitMs = ((Number) reply.get(1)).longValue();
+            blockedUntil.put(username, now + waitMs);
+            throw limited(waitMs);
+        }
+        if (granted > 1) {
+            // Added to what a concurrent upload may have banked meanwhile, not in place of it
+            prefetched.asMap().merge(username, new AtomicInteger((int) granted - 1), (banked, fresh) -> {
+                banked.addAndGet(fresh.get());
+                return banked;
+            });
+        }
+    }
+    
+    // The count and the enqueue are not atomic, concurrent uploads can overshoot the cap by a few jobs
+    private void checkInFlight(User user) {
+        int maxInFlight = maxInFlight(user.getRole());
+        if (maxInFlight <= 0) {
+            return;
+        }
+        long active = analysisQueueRepository.countActiveByUserId(user.getId());
+        if (active >= maxInFlight) {
+            throw new RateLimitExceededException("Too many analyses in progress (" + active + " of " + maxInFlight
+                    + "), please wait for some to finish", Duration.ofSeconds(5));
+        }
+    }
+    
+    private int maxInFlight(User.Role role) {
+        switch (role) {
+            case ADMIN:
+                return adminMaxInFlight;
+            case MODERATOR:
+                return moderatorMaxInFlight;
+            default:
+                return userMaxInFlight;
+        }
+    }
+    
+    private RateLimitExceededException limited(long waitMs) {
+        return new RateLimitExceededException("Upload rate limit exceeded, please retry later", Duration.ofMillis(waitMs));
+    }
+    
+    private static boolean decrementIfPositive(AtomicInteger tokens) {
+        int current;
+        do {
+            current = tokens.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - 1));
+        return true;
+    }
+}
\ No newline at end of file
@@ -7,6 +7,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -20,11 +21,17 @@ import java.io.IOException;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
     @Autowired
-    private JwtTokenProvider tokenProvider;
+    private AuthenticationCache authenticationCache;
     
     @Autowired
     private UserDetailsService userDetailsService;
     
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+    
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+    
     @Override
     protected void doFilterInternal(HttpServletRequest request, 
                                   HttpServletResponse response, 
@@ -32,10 +39,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
             
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                String username = tokenProvider.getUsernameFromToken(jwt);
-                
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            AuthenticationCache.VerifiedToken token = StringUtils.hasText(jwt) ? authenticationCache.verify(jwt) : null;
+            UserDetails userDetails = token != null ? resolveUser(token) : null;
+            
+            if (userDetails != null) {
                 UsernamePasswordAuthenticationToken authentication = 
                     new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -49,6 +56,25 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
     
+    // Stateless tokens are trusted as issued unless revoked since, everything else goes through the user record.
+    // Null when the token has been revoked.
+    private UserDetails resolveUser(AuthenticationCache.VerifiedToken token) {
+        if (tokenProvider.isStatelessEnabled() && token.getRole() != null) {
+            Boolean revoked = tokenRevocationService.isRevoked(token.getUsername(), token.getIssuedAt());
+            if (Boolean.TRUE.equals(revoked)) {
+                return null;
+            }
+            if (Boolean.FALSE.equals(revoked)) {
+                return User.withUsername(token.getUsername())
+                        .password("")
+                        .authorities("ROLE_" + token.getRole())
+                        .build();
+            }
+            // Redis is unreachable, fall back to the users table
+        }
+        return authenticationCache.getUser(token.getUsername(), userDetailsService::loadUserByUsername);
+    }
+    
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
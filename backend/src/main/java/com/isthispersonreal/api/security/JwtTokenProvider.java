@@ -1,7 +1,9 @@
 package com.isthispersonreal.api.security;
 
+import com.isthispersonreal.api.model.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -19,66 +21,92 @@ public class JwtTokenProvider {
     @Value("${jwt.expiration}")
     private long jwtExpirationMs;
     
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String ROLE_CLAIM = "role";
+    
+    // Tokens carry the user id and role so the filter can skip the user lookup, see TokenRevocationService
+    @Value("${jwt.stateless.enabled}")
+    private boolean statelessEnabled;
+    
+    @Value("${jwt.stateless.expiration}")
+    private long statelessExpirationMs;
+    
+    // Both are immutable and thread-safe, built once instead of per token
+    private SecretKey signingKey;
+    private JwtParser parser;
+    
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        parser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+    }
+    
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        return signingKey;
     }
     
     public String generateToken(Authentication authentication) {
         UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
-        
-        Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + jwtExpirationMs);
-        
-        return Jwts.builder()
-                .setSubject(userPrincipal.getUsername())
-                .setIssuedAt(now)
-                .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+        if (userPrincipal instanceof User) {
+            return generateToken((User) userPrincipal);
+        }
+        return generateToken(userPrincipal.getUsername());
+    }
+    
+    public String generateToken(User user) {
+        if (!statelessEnabled) {
+            return generateToken(user.getUsername());
+        }
+        return buildToken(user.getUsername(), statelessExpirationMs)
+                .claim(USER_ID_CLAIM, user.getId())
+                .claim(ROLE_CLAIM, user.getRole().name())
                 .compact();
     }
     
     public String generateToken(String username) {
+        return buildToken(username, jwtExpirationMs).compact();
+    }
+    
+    public boolean isStatelessEnabled() {
+        return statelessEnabled;
+    }
+    
+    private JwtBuilder buildToken(String username, long expirationMs) {
         Date now = new Date();
-        Date expiryDate = new Date(now.getTime() + jwtExpirationMs);
+        Date expiryDate = new Date(now.getTime() + expirationMs);
         
         return Jwts.builder()
                 .setSubject(username)
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
-                .compact();
+                .signWith(getSigningKey(), SignatureAlgorithm.HS512);
+    }
+    
+    // Verifies signature and expiry in a single parse, null when the token is not valid
+    public Claims parseValidClaims(String token) {
+        try {
+            return parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
     }
     
     public String getUsernameFromToken(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claims = parser.parseClaimsJws(token).getBody();
         
         return claims.getSubject();
     }
     
     public Date getExpirationDateFromToken(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        Claims claims = parser.parseClaimsJws(token).getBody();
         
         return claims.getExpiration();
     }
     
     public boolean validateToken(String token) {
-        try {
-            Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
-        } catch (JwtException | IllegalArgumentException e) {
-            return false;
-        }
+        return parseValidClaims(token) != null;
     }
     
     public boolean isTokenExpired(String token) {
@@ -0,0 +1,90 @@
+package com.isthispersonreal.api.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.isthispersonreal.api.service.CacheInvalidationBus;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+// Per-user revocation time for stateless tokens. A token issued before its user was disabled, deleted or
+// given another role is rejected; the Redis key lives as long as the longest such token can.
+@Component
+public class TokenRevocationService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+    
+    private static final String CACHE_NAME = "authRevocations";
+    private static final String KEY_PREFIX = "auth:revoked:";
+    
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    
+    @Autowired
+    private CacheInvalidationBus cacheInvalidationBus;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${jwt.stateless.expiration}")
+    private long statelessExpirationMs;
+    
+    @Value("${jwt.stateless.revocation-cache-ttl}")
+    private Duration revocationCacheTtl;
+    
+    @Value("${jwt.auth-cache.user-max-size}")
+    private long maxSize;
+    
+    // Epoch second of the last revocation, 0 when the user has none
+    private Cache<String, Long> revokedAt;
+    
+    @PostConstruct
+    public void init() {
+        revokedAt = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(revocationCacheTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, revokedAt, CACHE_NAME);
+        
+        cacheInvalidationBus.subscribe(CACHE_NAME, revokedAt::invalidate);
+    }
+    
+    public void revoke(String username) {
+        long now = Instant.now().getEpochSecond();
+        try {
+            redisTemplate.opsForValue().set(KEY_PREFIX + username, String.valueOf(now), Duration.ofMillis(statelessExpirationMs));
+        } catch (RuntimeException e) {
+            logger.warn("Failed to store token revocation for {}: {}", username, e.getMessage());
+        }
+        revokedAt.put(username, now);
+        cacheInvalidationBus.publish(CACHE_NAME, username);
+    }
+    
+    // Null when Redis cannot be reached, the caller then checks the user against the database
+    public Boolean isRevoked(String username, Date issuedAt) {
+        Long revoked = revokedAt.getIfPresent(username);
+        if (revoked == null) {
+            try {
+                String value = redisTemplate.opsForValue().get(KEY_PREFIX + username);
+                revoked = value != null ? Long.parseLong(value) : 0L;
+            } catch (RuntimeException e) {
+                logger.debug("Token revocation lookup failed for {}: {}", username, e.getMessage());
+                return null;
+            }
+            revokedAt.put(username, revoked);
+        }
+        // iat has second precision, a token issued within the revocation second counts as revoked
+        return revoked > 0 && (issuedAt == null || issuedAt.getTime() / 1000 <= revoked);
+    }
+}
\ No newline at end of file
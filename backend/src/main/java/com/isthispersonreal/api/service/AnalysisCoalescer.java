@@ -0,0 +1,145 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Collapses concurrent work for the same image hash so every caller shares one submission and one result
+@Service
+public class AnalysisCoalescer {
+    
+    private static final String RESULT_CACHE = "analysisResults";
+    
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+    
+    @Autowired
+    private AnalysisResultRepository analysisResultRepository;
+    
+    @Autowired
+    private CacheInvalidationBus cacheInvalidationBus;
+    
+    @Autowired
+    @Qualifier("blockingScheduler")
+    private Scheduler blockingScheduler;
+    
+    private final Map<String, CompletableFuture<AnalysisSubmission>> submissions = new ConcurrentHashMap<>();
+    
+    private final Map<String, Waiters> results = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        // Results computed on another node are announced on the cache channel
+        cacheInvalidationBus.subscribe(RESULT_CACHE, imageHash -> {
+            if (results.containsKey(imageHash)) {
+                analysisResultCache.get(imageHash, analysisResultRepository::findByImageHash)
+                        .ifPresent(this::complete);
+            }
+        });
+    }
+    
+    public AnalysisSubmission submitOnce(String imageHash, Callable<AnalysisSubmission> submission) throws Exception {
+        CompletableFuture<AnalysisSubmission> mine = new CompletableFuture<>();
+        CompletableFuture<AnalysisSubmission> existing = submissions.putIfAbsent(imageHash, mine);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        
+        try {
+            AnalysisSubmission result = submission.call();
+            mine.complete(result);
+            return result;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            submissions.remove(imageHash, mine);
+        }
+    }
+    
+    public Optional<AnalysisResult> awaitResult(String imageHash, Duration timeout) throws InterruptedException {
+        Waiters waiters = register(imageHash);
+        try {
+            // Register before checking, otherwise a result stored in between would never wake us
+            Optional<AnalysisResult> stored = analysisResultCache.get(imageHash, analysisResultRepository::findByImageHash);
+            if (stored.isPresent()) {
+                return stored;
+            }
+            return Optional.of(waiters.future.get(timeout.toMillis(), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Analysis failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            unregister(imageHash, waiters);
+        }
+    }
+    
+    // Non-blocking variant: no thread is held while the analysis is running, empty on timeout
+    public Mono<AnalysisResult> watchResult(String imageHash, Duration timeout) {
+        return Mono.defer(() -> {
+            Waiters waiters = register(imageHash);
+            return Mono.fromCallable(() -> analysisResultCache.get(imageHash, analysisResultRepository::findByImageHash)
+                            .orElse(null))
+                    .subscribeOn(blockingScheduler)
+                    // The future is shared with other waiters, so unsubscribing must not cancel it
+                    .switchIfEmpty(Mono.fromFuture(waiters.future, true)
+                            .onErrorMap(e -> new RuntimeException("Analysis failed: " + e.getMessage(), e))
+                            .timeout(timeout, Mono.empty()))
+                    .doFinally(signal -> unregister(imageHash, waiters));
+        });
+    }
+    
+    private Waiters register(String imageHash) {
+        return results.compute(imageHash, (hash, existing) -> {
+            Waiters registered = existing != null ? existing : new Waiters();
+            registered.count++;
+            return registered;
+        });
+    }
+    
+    private void unregister(String imageHash, Waiters waiters) {
+        results.computeIfPresent(imageHash, (hash, registered) ->
+                registered != waiters || --registered.count > 0 ? registered : null);
+    }
+    
+    public void complete(AnalysisResult result) {
+        Waiters waiters = results.remove(result.getImageHash());
+        if (waiters != null) {
+            waiters.future.complete(result);
+        }
+    }
+    
+    public void fail(String imageHash, Throwable error) {
+        Waiters waiters = results.remove(imageHash);
+        if (waiters != null) {
+            waiters.future.completeExceptionally(error);
+        }
+    }
+    
+    private static class Waiters {
+        
+        private final CompletableFuture<AnalysisResult> future = new CompletableFuture<>();
+        private int count;
+    }
+}
\ No newline at end of file
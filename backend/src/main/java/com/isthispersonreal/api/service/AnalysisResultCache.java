@@ -0,0 +1,117 @@
+package com.isthispersonreal.api.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.isthispersonreal.api.model.AnalysisResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+// Near-cache per JVM in front of a shared Redis tier, both keyed by image hash
+@Service
+public class AnalysisResultCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisResultCache.class);
+    
+    private static final String CACHE_NAME = "analysisResults";
+    private static final String KEY_PREFIX = "analysis:result:";
+    
+    @Autowired
+    private RedisTemplate<String, byte[]> binaryRedisTemplate;
+    
+    @Autowired
+    private CacheInvalidationBus cacheInvalidationBus;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${analysis.cache.local-max-size}")
+    private long localMaxSize;
+    
+    @Value("${analysis.cache.local-ttl}")
+    private Duration localTtl;
+    
+    @Value("${analysis.cache.redis-ttl}")
+    private Duration redisTtl;
+    
+    private Cache<String, AnalysisResult> localCache;
+    
+    @PostConstruct
+    public void init() {
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(localTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, CACHE_NAME + ".local");
+        
+        // Another node stored or changed this result, drop our copy so the next read goes to Redis
+        cacheInvalidationBus.subscribe(CACHE_NAME, localCache::invalidate);
+    }
+    
+    public Optional<AnalysisResult> get(String imageHash, Function<String, Optional<AnalysisResult>> loader) {
+        AnalysisResult cached = localCache.getIfPresent(imageHash);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        
+        AnalysisResult shared = readShared(imageHash);
+        if (shared != null) {
+            localCache.put(imageHash, shared);
+            return Optional.of(shared);
+        }
+        
+        Optional<AnalysisResult> loaded = loader.apply(imageHash);
+        loaded.ifPresent(result -> {
+            localCache.put(imageHash, result);
+            writeShared(result);
+        });
+        return loaded;
+    }
+    
+    public void put(AnalysisResult result) {
+        localCache.put(result.getImageHash(), result);
+        writeShared(result);
+        cacheInvalidationBus.publish(CACHE_NAME, result.getImageHash());
+    }
+    
+    public void evict(String imageHash) {
+        localCache.invalidate(imageHash);
+        try {
+            binaryRedisTemplate.delete(KEY_PREFIX + imageHash);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to evict {} from Redis: {}", imageHash, e.getMessage());
+        }
+        cacheInvalidationBus.publish(CACHE_NAME, imageHash);
+    }
+    
+    // Redis trouble degrades to the database, it never fails the request
+    private AnalysisResult readShared(String imageHash) {
+        try {
+            byte[] data = binaryRedisTemplate.opsForValue().get(KEY_PREFIX + imageHash);
+            return data != null ? AnalysisResultCodec.decode(data) : null;
+        } catch (RuntimeException e) {
+            logger.debug("Redis read failed for {}: {}", imageHash, e.getMessage());
+            return null;
+        }
+    }
+    
+    private void writeShared(AnalysisResult result) {
+        try {
+            binaryRedisTemplate.opsForValue().set(KEY_PREFIX + result.getImageHash(),
+                    AnalysisResultCodec.encode(result), redisTtl);
+        } catch (RuntimeException e) {
+            logger.debug("Redis write failed for {}: {}", result.getImageHash(), e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.model.ScoreVectorConverter;
+import com.isthispersonreal.api.model.User;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Compact binary form of AnalysisResult for the shared Redis cache tier
+public final class AnalysisResultCodec {
+    
+    private static final byte VERSION = 3;
+    
+    private static final AnalysisResult.DetectionLabel[] LABELS = AnalysisResult.DetectionLabel.values();
+    
+    private AnalysisResultCodec() {}
+    
+    public static byte[] encode(AnalysisResult result) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeLong(out, result.getId());
+            writeLong(out, result.getUser() != null ? result.getUser().getId() : null);
+            writeString(out, result.getImageHash());
+            writeLong(out, result.getPerceptualHash());
+            writeString(out, result.getFileName());
+            writeLong(out, result.getFileSize());
+            writeString(out, result.getMimeType());
+            out.writeByte(result.getDetectionLabel() != null ? result.getDetectionLabel().ordinal() : -1);
+            out.writeDouble(result.getConfidenceScore() != null ? result.getConfidenceScore() : Double.NaN);
+            
+            writeBytes(out, ScoreVectorConverter.encode(result.getScores()));
+            
+            writeLong(out, result.getProcessingTimeMs());
+            writeString(out, result.getMlModelVersion());
+            writeString(out, result.getOpenaiAnalysis());
+            writeString(out, result.getSocialMediaAnalysis());
+            writeTimestamp(out, result.getCreatedAt());
+            writeTimestamp(out, result.getUpdatedAt());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    public static AnalysisResult decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            
+            AnalysisResult result = new AnalysisResult();
+            result.setId(readLong(in));
+            Long userId = readLong(in);
+            if (userId != null) {
+                User user = new User();
+                user.setId(userId);
+                result.setUser(user);
+            }
+            result.setImageHash(readString(in));
+            result.setPerceptualHash(readLong(in));
+            result.setFileName(readString(in));
+            result.setFileSize(readLong(in));
+            result.setMimeType(readString(in));
+            int label = in.readByte();
+            result.setDetectionLabel(label >= 0 ? LABELS[label] : null);
+            double confidence = in.readDouble();
+            result.setConfidenceScore(Double.isNaN(confidence) ? null : confidence);
+            
+            result.setScores(ScoreVectorConverter.decode(readBytes(in)));
+            
+            result.setProcessingTimeMs(readLong(in));
+            result.setMlModelVersion(readString(in));
+            result.setOpenaiAnalysis(readString(in));
+            result.setSocialMediaAnalysis(readString(in));
+            result.setCreatedAt(readTimestamp(in));
+            result.setUpdatedAt(readTimestamp(in));
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+    
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+    
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value != null ? value.length : -1);
+        if (value != null) {
+            out.write(value);
+        }
+    }
+    
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+    
+    // writeUTF caps at 64 KB, so long texts such as the OpenAI narrative are written as raw UTF-8
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+    
+    private static void writeTimestamp(DataOutputStream out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(value.getNano());
+        }
+    }
+    
+    private static LocalDateTime readTimestamp(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
\ No newline at end of file
@@ -3,195 +3,411 @@ package com.isthispersonreal.api.service;
 import com.isthispersonreal.api.model.AnalysisResult;
 import com.isthispersonreal.api.model.AnalysisQueue;
 import com.isthispersonreal.api.model.User;
+import com.isthispersonreal.api.queue.AnalysisQueueService;
 import com.isthispersonreal.api.repository.AnalysisResultRepository;
-import com.isthispersonreal.api.repository.AnalysisQueueRepository;
+import com.isthispersonreal.api.resilience.BulkheadRegistry;
+import com.isthispersonreal.api.resilience.DownstreamGuardRegistry;
+import com.isthispersonreal.api.resilience.DownstreamUnavailableException;
+import com.isthispersonreal.api.resilience.UploadRateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
-import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class AnalysisService {
     
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisService.class);
+    
+    private static final String ENQUEUE_LEASE_PREFIX = "analysis:lease:enqueue:";
+    
     @Autowired
     private AnalysisResultRepository analysisResultRepository;
     
     @Autowired
-    private AnalysisQueueRepository analysisQueueRepository;
+    private AnalysisQueueService analysisQueueService;
+    
+    @Autowired
+    private ImageStorageService imageStorageService;
+    
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+    
+    @Autowired
+    private AnalysisCoalescer analysisCoalescer;
+    
+    @Autowired
+    private RedisLeaseService redisLeaseService;
+    
+    @Autowired
+    private PerceptualHasher perceptualHasher;
+    
+    @Autowired
+    private PerceptualHashIndex perceptualHashIndex;
+    
+    @Value("${analysis.phash.enabled}")
+    private boolean perceptualHashEnabled;
+    
+    @Value("${analysis.phash.max-distance}")
+    private int perceptualHashMaxDistance;
+    
+    @Value("${analysis.queue.enqueue-lease-ttl}")
+    private Duration enqueueLeaseTtl;
+    
+    @Value("${analysis.upload.max-file-size}")
+    private DataSize maxFileSize;
     
     @Autowired
     private UserService userService;
     
     @Autowired
-    private OpenAIService openAIService;
+    private AnalysisStatsService analysisStatsService;
+    
+    @Autowired
+    private UserAnalysisStatsService userAnalysisStatsService;
+    
+    @Autowired
+    private ExplanationService explanationService;
     
-    @Value("${ml-service.url}")
-    private String mlServiceUrl;
+    @Autowired
+    private MlBatchDispatcher mlBatchDispatcher;
     
     @Value("${ml-service.timeout}")
     private int mlServiceTimeout;
     
-    private final WebClient webClient = WebClient.builder()
-            .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
-            .build();
+    @Autowired
+    @Qualifier("blockingScheduler")
+    private Scheduler blockingScheduler;
+    
+    @Autowired
+    private BulkheadRegistry bulkheadRegistry;
+    
+    @Autowired
+    private UploadRateLimiter uploadRateLimiter;
+    
+    @Autowired
+    private DownstreamGuardRegistry downstreamGuardRegistry;
+    
+    @Autowired
+    private ImagePrescreener imagePrescreener;
     
-    public AnalysisResult analyzeImage(MultipartFile file, String username) throws IOException {
+    public AnalysisSubmission analyzeImage(MultipartFile file, String username) throws IOException {
         User user = userService.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("User not found"));
         
-        String imageHash = calculateImageHash(file);
+        // Before spooling anything, a limited user costs us no disk or hashing
+        uploadRateLimiter.acquire(user);
         
-        // Check if we already have results for this image
-        Optional<AnalysisResult> existingResult = analysisResultRepository.findByImageHash(imageHash);
-        if (existingResult.isPresent()) {
-            return existingResult.get();
-        }
+        // Hash and spool the upload in a single pass
+        IngestedImage image = imageStorageService.ingest(file, maxFileSize.toBytes());
+        String imageHash = image.getImageHash();
         
-        // Check if this image is already in the queue
-        Optional<AnalysisQueue> existingQueue = analysisQueueRepository.findByImageHash(imageHash);
-        if (existingQueue.isPresent()) {
-            throw new RuntimeException("Analysis already in progress for this image");
+        try {
+            // Junk is turned away on its first bytes and header, whatever Content-Type the client claimed
+            ImagePrescreener.ImageInfo info = imagePrescreener.inspect(image.getSpoolPath());
+            image = new IngestedImage(imageHash, image.getSpoolPath(), image.getSize(), image.getFileName(),
+                    info.getFormat().getMimeType());
+            
+            // Check if we already have results for this image
+            Optional<AnalysisResult> existingResult = getAnalysisResult(imageHash);
+            if (existingResult.isPresent()) {
+                return AnalysisSubmission.completed(existingResult.get());
+            }
+            
+            // A resized or recompressed copy of an analysed image reuses that analysis
+            Long perceptualHash = perceptualHashEnabled ? perceptualHasher.compute(image.getSpoolPath()) : null;
+            if (perceptualHash != null) {
+                Optional<AnalysisResult> nearDuplicate = findNearDuplicate(perceptualHash);
+                if (nearDuplicate.isPresent()) {
+                    return AnalysisSubmission.completed(nearDuplicate.get());
+                }
+            }
+            
+            // Nothing would process a new job while the ML circuit is open, say so now instead of queueing it
+            downstreamGuardRegistry.get(BulkheadRegistry.ML_SERVICE).checkAvailable();
+            
+            // Concurrent uploads of the same image in this JVM share a single submission
+            IngestedImage upload = image;
+            return analysisCoalescer.submitOnce(imageHash, () -> submit(user, upload, info, perceptualHash));
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to queue analysis: " + e.getMessage(), e);
+        } finally {
+            imageStorageService.discard(image);
+        }
+    }
+    
+    public Optional<AnalysisResult> awaitResult(String imageHash, Duration timeout) throws InterruptedException {
+        return analysisCoalescer.awaitResult(imageHash, timeout);
+    }
+    
+    // Ingest and enqueue are blocking (spool file, JPA, Redis) and run on the bounded scheduler,
+    // waiting for the result itself holds no thread
+    public Mono<AnalysisSubmission> analyzeImageAsync(MultipartFile file, String username, Duration wait) {
+        Mono<AnalysisSubmission> submitted = Mono.fromCallable(() -> analyzeImage(file, username))
+                .subscribeOn(blockingScheduler);
+        if (wait.isZero()) {
+            return submitted;
+        }
+        return submitted.flatMap(submission -> submission.isCompleted()
+                ? Mono.just(submission)
+                : watchResult(submission.getImageHash(), wait)
+                        .map(AnalysisSubmission::completed)
+                        .defaultIfEmpty(submission));
+    }
+    
+    public Mono<AnalysisResult> watchResult(String imageHash, Duration timeout) {
+        return analysisCoalescer.watchResult(imageHash, timeout);
+    }
+    
+    private Optional<AnalysisResult> findNearDuplicate(long perceptualHash) {
+        long resultId = perceptualHashIndex.findNearest(perceptualHash, perceptualHashMaxDistance);
+        if (resultId < 0) {
+            return Optional.empty();
         }
+        // Resolve through the hash so repeat near-duplicates are served from the result cache
+        return analysisResultRepository.findImageHashById(resultId)
+                .flatMap(this::getAnalysisResult);
+    }
+    
+    private AnalysisSubmission submit(User user, IngestedImage image, ImagePrescreener.ImageInfo info,
+                                      Long perceptualHash) throws IOException, InterruptedException {
+        String imageHash = image.getImageHash();
         
-        // Create queue entry
-        AnalysisQueue queueEntry = new AnalysisQueue(user, imageHash, file.getOriginalFilename(), 
-                                                   file.getSize(), file.getContentType());
-        analysisQueueRepository.save(queueEntry);
+        // Other instances may be enqueueing the same image, the lease holder does it and the rest reuse its row
+        RedisLeaseService.Lease lease = redisLeaseService.tryAcquire(ENQUEUE_LEASE_PREFIX + imageHash, enqueueLeaseTtl);
+        if (lease == null) {
+            return AnalysisSubmission.queued(waitForQueueEntry(imageHash));
+        }
         
-        // Process immediately (in production, this would be async)
-        return processAnalysis(file, user, imageHash);
+        try {
+            // Check if this image is already in the queue
+            Optional<AnalysisQueue> existingQueue = analysisQueueService.findByImageHash(imageHash);
+            if (existingQueue.isPresent()) {
+                AnalysisQueue job = existingQueue.get();
+                if (job.getStatus() == AnalysisQueue.QueueStatus.PENDING
+                        || job.getStatus() == AnalysisQueue.QueueStatus.PROCESSING) {
+                    return AnalysisSubmission.queued(job);
+                }
+                
+                commitForAnalysis(image, info);
+                job.setPerceptualHash(perceptualHash);
+                return AnalysisSubmission.queued(analysisQueueService.requeue(job));
+            }
+            
+            // Hand the spooled image to the workers, then create the queue entry
+            commitForAnalysis(image, info);
+            AnalysisQueue queueEntry = new AnalysisQueue(user, imageHash, image.getFileName(), 
+                                                       image.getSize(), image.getContentType());
+            queueEntry.setPerceptualHash(perceptualHash);
+            try {
+                return AnalysisSubmission.queued(analysisQueueService.enqueue(queueEntry));
+            } catch (DataIntegrityViolationException e) {
+                // Lost the race on the unique image_hash index, somebody else's row is just as good
+                return AnalysisSubmission.queued(analysisQueueService.findByImageHash(imageHash)
+                        .orElseThrow(() -> e));
+            }
+        } finally {
+            redisLeaseService.release(lease);
+        }
+    }
+    
+    // Workers get the downscaled copy, the queue row keeps the size and type of what the user uploaded
+    private void commitForAnalysis(IngestedImage image, ImagePrescreener.ImageInfo info) throws IOException {
+        IngestedImage prepared = imagePrescreener.downscale(image, info);
+        try {
+            imageStorageService.commit(prepared);
+        } finally {
+            if (prepared != image) {
+                imageStorageService.discard(prepared);
+            }
+        }
+    }
+    
+    private AnalysisQueue waitForQueueEntry(String imageHash) throws InterruptedException {
+        long deadline = System.nanoTime() + enqueueLeaseTtl.toNanos();
+        while (System.nanoTime() < deadline) {
+            Optional<AnalysisQueue> job = analysisQueueService.findByImageHash(imageHash);
+            if (job.isPresent()) {
+                return job.get();
+            }
+            Thread.sleep(50);
+        }
+        throw new RuntimeException("Analysis submission for this image is in progress, please retry");
     }
     
-    @Cacheable(value = "analysisResults", key = "#imageHash")
     public Optional<AnalysisResult> getAnalysisResult(String imageHash) {
-        return analysisResultRepository.findByImageHash(imageHash);
+        return analysisResultCache.get(imageHash, analysisResultRepository::findByImageHash);
+    }
+    
+    // Newest first; pass the last row's createdAt and id to continue after it
+    public List<AnalysisResult> getAnalysisResultsPage(Long userId, LocalDateTime afterCreatedAt, Long afterId, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        if (afterCreatedAt == null || afterId == null) {
+            return analysisResultRepository.findPageByUserId(userId, page);
+        }
+        return analysisResultRepository.findPageByUserIdAfter(userId, afterCreatedAt, afterId, page);
+    }
+    
+    public Optional<AnalysisQueue> getQueueStatus(String imageHash) {
+        return analysisQueueService.findByImageHash(imageHash);
     }
     
-    public AnalysisResult processAnalysis(MultipartFile file, User user, String imageHash) throws IOException {
+    public void processJob(AnalysisQueue job) {
         long startTime = System.currentTimeMillis();
         
         try {
-            // Call Python ML service
-            Map<String, Object> mlResult = callMLService(file);
-            
-            // Extract results
-            String label = (String) mlResult.get("label");
-            Double confidence = (Double) mlResult.get("confidence");
-            @SuppressWarnings("unchecked")
-            Map<String, Double> scores = (Map<String, Double>) mlResult.get("scores");
-            
-            // Convert label to enum
-            AnalysisResult.DetectionLabel detectionLabel = convertLabel(label);
-            
-            // Create analysis result
-            AnalysisResult result = new AnalysisResult(user, imageHash, file.getOriginalFilename(), 
-                                                     detectionLabel, confidence);
-            result.setFileSize(file.getSize());
-            result.setMimeType(file.getContentType());
-            result.setScores(scores);
-            result.setProcessingTimeMs(System.currentTimeMillis() - startTime);
-            result.setMlModelVersion((String) mlResult.get("model_version"));
-            
-            // Get OpenAI analysis
-            String openaiAnalysis = openAIService.analyzeImageResult(result);
-            result.setOpenaiAnalysis(openaiAnalysis);
-            
-            // Save result
-            result = analysisResultRepository.save(result);
+            // Another node may already have produced this result
+            Optional<AnalysisResult> existing = getAnalysisResult(job.getImageHash());
+            if (existing.isPresent()) {
+                completeWithExisting(job, existing.get());
+                return;
+            }
             
-            // Update queue status
-            updateQueueStatus(imageHash, AnalysisQueue.QueueStatus.COMPLETED);
+            // Call Python ML service
+            MlVerdict mlResult = bulkheadRegistry.get(BulkheadRegistry.ML_SERVICE)
+                    .call(() -> mlBatchDispatcher.submit(buildMlRequest(job)).get(mlServiceTimeout, TimeUnit.MILLISECONDS));
             
-            return result;
+            // The verdict is stored and returned straight away, the OpenAI narrative follows later
+            storeResult(job, buildResult(job, mlResult, startTime)).ifPresent(explanationService::requestExplanation);
             
         } catch (Exception e) {
-            updateQueueStatus(imageHash, AnalysisQueue.QueueStatus.FAILED, e.getMessage());
-            throw new RuntimeException("Analysis failed: " + e.getMessage(), e);
+            handleFailure(job, e);
         }
     }
     
-    private Map<String, Object> callMLService(MultipartFile file) throws IOException {
-        return webClient.post()
-                .uri(mlServiceUrl + "/analyze")
-                .bodyValue(file.getBytes())
-                .retrieve()
-                .bodyToMono(Map.class)
-                .timeout(java.time.Duration.ofMillis(mlServiceTimeout))
-                .block();
+    // Same flow as processJob without holding a thread across the ML call,
+    // only the database, cache and file work is offloaded onto the bounded blocking scheduler
+    public Mono<AnalysisResult> processJobAsync(AnalysisQueue job) {
+        long startTime = System.currentTimeMillis();
+        
+        return Mono.fromCallable(() -> getAnalysisResult(job.getImageHash()))
+                .subscribeOn(blockingScheduler)
+                .flatMap(existing -> existing.isPresent()
+                        ? Mono.fromCallable(() -> completeWithExisting(job, existing.get()))
+                        : Mono.fromFuture(() -> mlBatchDispatcher.submit(buildMlRequest(job)))
+                                .timeout(Duration.ofMillis(mlServiceTimeout))
+                                .map(mlResult -> buildResult(job, mlResult, startTime))
+                                .publishOn(blockingScheduler)
+                                .flatMap(result -> Mono.justOrEmpty(storeResult(job, result)))
+                                .doOnNext(explanationService::requestExplanation))
+                .onErrorResume(e -> Mono.fromRunnable(() -> handleFailure(job, e))
+                        .subscribeOn(blockingScheduler)
+                        .then(Mono.empty()));
     }
     
-    private String calculateImageHash(MultipartFile file) throws IOException {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(file.getBytes());
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
+    private AnalysisResult completeWithExisting(AnalysisQueue job, AnalysisResult existing) {
+        // A job reclaimed meanwhile keeps its image, its new owner still reads it
+        if (analysisQueueService.markCompleted(job)) {
+            imageStorageService.delete(job.getImageHash());
         }
+        analysisCoalescer.complete(existing);
+        return existing;
     }
     
-    private AnalysisResult.DetectionLabel convertLabel(String label) {
-        if ("AI".equalsIgnoreCase(label) || "ai_generated".equalsIgnoreCase(label)) {
-            return AnalysisResult.DetectionLabel.AI_GENERATED;
-        } else if ("REAL".equalsIgnoreCase(label) || "real".equalsIgnoreCase(label)) {
-            return AnalysisResult.DetectionLabel.REAL;
-        } else {
-            return AnalysisResult.DetectionLabel.UNCERTAIN;
+    private AnalysisResult buildResult(AnalysisQueue job, MlVerdict mlResult, long startTime) {
+        // Extract results
+        Double confidence = mlResult.getConfidence();
+        Map<String, Double> scores = mlResult.getScores();
+        
+        // Convert label to enum
+        AnalysisResult.DetectionLabel detectionLabel = mlResult.toDetectionLabel();
+        
+        // Create analysis result
+        AnalysisResult result = new AnalysisResult(job.getUser(), job.getImageHash(), job.getFileName(), 
+                                                 detectionLabel, confidence);
+        result.setFileSize(job.getFileSize());
+        result.setMimeType(job.getMimeType());
+        result.setPerceptualHash(job.getPerceptualHash());
+        result.setScores(scores);
+        result.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+        result.setMlModelVersion(mlResult.getModelVersion());
+        return result;
+    }
+    
+    // Empty when the job's lease was reclaimed while the ML service worked on it: the new owner stores the
+    // result, this worker leaves the row, the counters, the caches and the image alone.
+    // Also empty when another job stored this image first, this one then completes with that row
+    private Optional<AnalysisResult> storeResult(AnalysisQueue job, AnalysisResult result) {
+        Optional<AnalysisResult> stored;
+        try {
+            stored = analysisQueueService.complete(job, () -> userAnalysisStatsService.saveResult(result));
+        } catch (DataIntegrityViolationException e) {
+            // Lost the race on the unique image_hash index, the job rolled back to PROCESSING and settles with
+            // the stored row; its writer already asked for the explanation
+            AnalysisResult existing = analysisResultRepository.findByImageHash(job.getImageHash()).orElseThrow(() -> e);
+            completeWithExisting(job, existing);
+            return Optional.empty();
+        }
+        if (stored.isEmpty()) {
+            logger.info("Dropped the result for {}, job {} was reclaimed from this worker", job.getImageHash(), job.getId());
+            return stored;
         }
+        
+        AnalysisResult saved = stored.get();
+        analysisStatsService.recordResult(saved.getDetectionLabel());
+        analysisResultCache.put(saved);
+        if (saved.getPerceptualHash() != null) {
+            perceptualHashIndex.add(saved.getId(), saved.getPerceptualHash());
+        }
+        imageStorageService.delete(job.getImageHash());
+        analysisCoalescer.complete(saved);
+        return stored;
     }
     
-    private void updateQueueStatus(String imageHash, AnalysisQueue.QueueStatus status) {
-        updateQueueStatus(imageHash, status, null);
+    private void handleFailure(AnalysisQueue job, Throwable e) {
+        String imageHash = job.getImageHash();
+        DownstreamUnavailableException shed = findShed(e);
+        if (shed != null) {
+            logger.debug("Analysis of {} deferred: {}", imageHash, shed.getMessage());
+            analysisQueueService.defer(job, shed.getMessage(), shed.getRetryAfter());
+            return;
+        }
+        
+        logger.warn("Analysis failed for {}: {}", imageHash, e.getMessage());
+        boolean retrying = analysisQueueService.markFailed(job, e.getMessage());
+        if (!retrying) {
+            imageStorageService.delete(imageHash);
+            analysisCoalescer.fail(imageHash, e);
+        }
     }
     
-    private void updateQueueStatus(String imageHash, AnalysisQueue.QueueStatus status, String errorMessage) {
-        Optional<AnalysisQueue> queueOpt = analysisQueueRepository.findByImageHash(imageHash);
-        if (queueOpt.isPresent()) {
-            AnalysisQueue queue = queueOpt.get();
-            queue.setStatus(status);
-            if (status == AnalysisQueue.QueueStatus.PROCESSING) {
-                queue.setStartedAt(LocalDateTime.now());
-            } else if (status == AnalysisQueue.QueueStatus.COMPLETED) {
-                queue.setCompletedAt(LocalDateTime.now());
-            } else if (status == AnalysisQueue.QueueStatus.FAILED) {
-                queue.setErrorMessage(errorMessage);
+    // The ML call reaches us wrapped in ExecutionException or CompletionException
+    private DownstreamUnavailableException findShed(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DownstreamUnavailableException) {
+                return (DownstreamUnavailableException) cause;
             }
-            analysisQueueRepository.save(queue);
         }
+        return null;
+    }
+    
+    private MlAnalysisRequest buildMlRequest(AnalysisQueue job) {
+        return new MlAnalysisRequest(
+                new FileSystemResource(imageStorageService.resolve(job.getImageHash())),
+                job.getFileName(), job.getMimeType());
     }
     
+    // Served from the maintained totals, see AnalysisStatsService
     public Map<String, Object> getAnalysisStats() {
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("total_analyses", analysisResultRepository.count());
-        stats.put("real_count", analysisResultRepository.countByDetectionLabel(AnalysisResult.DetectionLabel.REAL));
-        stats.put("ai_generated_count", analysisResultRepository.countByDetectionLabel(AnalysisResult.DetectionLabel.AI_GENERATED));
-        stats.put("uncertain_count", analysisResultRepository.countByDetectionLabel(AnalysisResult.DetectionLabel.UNCERTAIN));
-        
-        // Queue stats
-        stats.put("pending_jobs", analysisQueueRepository.countByStatus(AnalysisQueue.QueueStatus.PENDING));
-        stats.put("processing_jobs", analysisQueueRepository.countByStatus(AnalysisQueue.QueueStatus.PROCESSING));
-        stats.put("completed_jobs", analysisQueueRepository.countByStatus(AnalysisQueue.QueueStatus.COMPLETED));
-        stats.put("failed_jobs", analysisQueueRepository.countByStatus(AnalysisQueue.QueueStatus.FAILED));
-        
-        return stats;
+        return analysisStatsService.getStats();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,262 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.model.AnalysisStat;
+import com.isthispersonreal.api.repository.AnalysisQueueRepository;
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import com.isthispersonreal.api.repository.AnalysisStatRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Analysis and queue totals maintained on write. Changes are counted in LongAdders, flushed as
+// relative updates into the analysis_stats table and periodically reconciled against the real
+// tables, so a stats read is one primary key scan over a handful of rows.
+@Service
+public class AnalysisStatsService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisStatsService.class);
+    
+    private static final String RECONCILE_LEASE_KEY = "analysis:lease:stats-reconcile";
+    
+    public static final String TOTAL_ANALYSES = "total_analyses";
+    public static final String REAL_COUNT = "real_count";
+    public static final String AI_GENERATED_COUNT = "ai_generated_count";
+    public static final String UNCERTAIN_COUNT = "uncertain_count";
+    public static final String PENDING_JOBS = "pending_jobs";
+    public static final String PROCESSING_JOBS = "processing_jobs";
+    public static final String COMPLETED_JOBS = "completed_jobs";
+    public static final String FAILED_JOBS = "failed_jobs";
+    
+    // Running mean of queue turnaround, kept as a sum and a sample count so it can be flushed like a counter
+    private static final String PROCESSING_TIME_TOTAL_MS = "processing_time_total_ms";
+    private static final String PROCESSING_TIME_SAMPLES = "processing_time_samples";
+    
+    private static final List<String> COUNTS = List.of(TOTAL_ANALYSES, REAL_COUNT, AI_GENERATED_COUNT, UNCERTAIN_COUNT,
+            PENDING_JOBS, PROCESSING_JOBS, COMPLETED_JOBS, FAILED_JOBS);
+    
+    @Autowired
+    private AnalysisStatRepository analysisStatRepository;
+    
+    @Autowired
+    private AnalysisResultRepository analysisResultRepository;
+    
+    @Autowired
+    private AnalysisQueueRepository analysisQueueRepository;
+    
+    @Autowired
+    private RedisLeaseService redisLeaseService;
+    
+    @Value("${analysis.stats.reconcile-lease-ttl}")
+    private Duration reconcileLeaseTtl;
+    
+    private final Map<String, LongAdder> deltas = new LinkedHashMap<>();
+    
+    // Flush and reconcile do database I/O, a lock rather than synchronized keeps virtual threads unpinned
+    private final ReentrantLock flushLock = new ReentrantLock();
+    
+    public AnalysisStatsService() {
+        for (String name : COUNTS) {
+            deltas.put(name, new LongAdder());
+        }
+        deltas.put(PROCESSING_TIME_TOTAL_MS, new LongAdder());
+        deltas.put(PROCESSING_TIME_SAMPLES, new LongAdder());
+    }
+    
+    public void recordResult(AnalysisResult.DetectionLabel label) {
+        afterCommit(() -> {
+            deltas.get(TOTAL_ANALYSES).increment();
+            String labelStat = labelStat(label);
+            if (labelStat != null) {
+                deltas.get(labelStat).increment();
+            }
+        });
+    }
+    
+    // from is null for a new queue entry
+    public void recordTransition(AnalysisQueue.QueueStatus from, AnalysisQueue.QueueStatus to) {
+        String fromStat = statusStat(from);
+        String toStat = statusStat(to);
+        if (fromStat == null && toStat == null || from == to) {
+            return;
+        }
+        afterCommit(() -> {
+            if (fromStat != null) {
+                deltas.get(fromStat).decrement();
+            }
+            if (toStat != null) {
+                deltas.get(toStat).increment();
+            }
+        });
+    }
+    
+    public void recordProcessingTime(LocalDateTime createdAt, LocalDateTime completedAt) {
+        if (createdAt == null || completedAt == null) {
+            return;
+        }
+        long elapsedMs = Math.max(0, Duration.between(createdAt, completedAt).toMillis());
+        afterCommit(() -> {
+            deltas.get(PROCESSING_TIME_TOTAL_MS).add(elapsedMs);
+            deltas.get(PROCESSING_TIME_SAMPLES).increment();
+        });
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Long> totals = new HashMap<>();
+        for (AnalysisStat stat : analysisStatRepository.findAll()) {
+            totals.put(stat.getName(), stat.getValue());
+        }
+        // Include what this node has counted but not flushed yet
+        deltas.forEach((name, delta) -> totals.merge(name, delta.sum(), Long::sum));
+        
+        Map<String, Object> stats = new HashMap<>();
+        for (String name : COUNTS) {
+            stats.put(name, Math.max(0, totals.getOrDefault(name, 0L)));
+        }
+        long samples = totals.getOrDefault(PROCESSING_TIME_SAMPLES, 0L);
+        // Seconds, same unit as AnalysisQueueRepository.getAverageProcessingTime
+        stats.put("average_processing_time", samples > 0
+                ? totals.getOrDefault(PROCESSING_TIME_TOTAL_MS, 0L) / 1000.0 / samples : null);
+        return stats;
+    }
+    
+    @Scheduled(fixedDelayString = "${analysis.stats.flush-interval-ms}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            deltas.forEach((name, delta) -> {
+                long value = delta.sumThenReset();
+                if (value == 0) {
+                    return;
+                }
+                try {
+                    // A missing row is created by the next reconcile from the real counts
+                    analysisStatRepository.increment(name, value, now);
+                } catch (RuntimeException e) {
+                    delta.add(value);
+                    logger.warn("Failed to flush {} stat: {}", name, e.getMessage());
+                }
+            });
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+    
+    @Async("analysisExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        reconcile();
+    }
+    
+    // Overwrites the totals with real counts, correcting drift from rolled back or lost updates.
+    // Deltas of other nodes that land between the count and the write are off until the next run.
+    @Scheduled(fixedDelayString = "${analysis.stats.reconcile-interval-ms}",
+            initialDelayString = "${analysis.stats.reconcile-interval-ms}")
+    public void reconcile() {
+        RedisLeaseService.Lease lease = redisLeaseService.tryAcquire(RECONCILE_LEASE_KEY, reconcileLeaseTtl);
+        if (lease == null) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            flush();
+            
+            long completed = analysisQueueRepository.countByStatus(AnalysisQueue.QueueStatus.COMPLETED);
+            Double averageSeconds = analysisQueueRepository.getAverageProcessingTime();
+            
+            List<AnalysisStat> stats = new ArrayList<>();
+            stats.add(new AnalysisStat(TOTAL_ANALYSES, analysisResultRepository.count()));
+            stats.add(new AnalysisStat(REAL_COUNT, analysisResultRepository.countByDetectionLabel(AnalysisResult.DetectionLabel.REAL)));
+            stats.add(new AnalysisStat(AI_GENERATED_COUNT, analysisResultRepository.countByDetectionLabel(AnalysisResult.DetectionLabel.AI_GENERATED)));
+            stats.add(new AnalysisStat(UNCERTAIN_COUNT, analysisResultRepository.countByDetectionLabel(AnalysisResult.DetectionLabel.UNCERTAIN)));
+            stats.add(new AnalysisStat(PENDING_JOBS, analysisQueueRepository.countByStatus(AnalysisQueue.QueueStatus.PENDING)));
+            stats.add(new AnalysisStat(PROCESSING_JOBS, analysisQueueRepository.countByStatus(AnalysisQueue.QueueStatus.PROCESSING)));
+            stats.add(new AnalysisStat(COMPLETED_JOBS, completed));
+            stats.add(new AnalysisStat(FAILED_JOBS, analysisQueueRepository.countByStatus(AnalysisQueue.QueueStatus.FAILED)));
+            stats.add(new AnalysisStat(PROCESSING_TIME_SAMPLES, averageSeconds != null ? completed : 0L));
+            stats.add(new AnalysisStat(PROCESSING_TIME_TOTAL_MS,
+                    averageSeconds != null ? Math.round(averageSeconds * 1000 * completed) : 0L));
+            analysisStatRepository.saveAll(stats);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to reconcile analysis stats: {}", e.getMessage());
+        } finally {
+            flushLock.unlock();
+            redisLeaseService.release(lease);
+        }
+    }
+    
+    // Counted only once the surrounding transaction commits, rollbacks leave the totals alone
+    private void afterCommit(Runnable update) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    update.run();
+                }
+            });
+        } else {
+            update.run();
+        }
+    }
+    
+    private String labelStat(AnalysisResult.DetectionLabel label) {
+        if (label == null) {
+            return null;
+        }
+        switch (label) {
+            case REAL:
+                return REAL_COUNT;
+            case AI_GENERATED:
+                return AI_GENERATED_COUNT;
+            case UNCERTAIN:
+                return UNCERTAIN_COUNT;
+            default:
+                return null;
+        }
+    }
+    
+    // Cancelled jobs are not reported
+    private String statusStat(AnalysisQueue.QueueStatus status) {
+        if (status == null) {
+            return null;
+        }
+        switch (status) {
+            case PENDING:
+                return PENDING_JOBS;
+            case PROCESSING:
+                return PROCESSING_JOBS;
+            case COMPLETED:
+                return COMPLETED_JOBS;
+            case FAILED:
+                return FAILED_JOBS;
+            default:
+                return null;
+        }
+    }
+}
\ No newline at end of file
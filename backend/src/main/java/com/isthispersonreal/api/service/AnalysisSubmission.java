@@ -0,0 +1,45 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.model.AnalysisResult;
+
+public class AnalysisSubmission {
+    
+    private final String imageHash;
+    private final AnalysisQueue job;
+    private final AnalysisResult result;
+    
+    private AnalysisSubmission(String imageHash, AnalysisQueue job, AnalysisResult result) {
+        this.imageHash = imageHash;
+        this.job = job;
+        this.result = result;
+    }
+    
+    public static AnalysisSubmission completed(AnalysisResult result) {
+        return new AnalysisSubmission(result.getImageHash(), null, result);
+    }
+    
+    public static AnalysisSubmission queued(AnalysisQueue job) {
+        return new AnalysisSubmission(job.getImageHash(), job, null);
+    }
+    
+    public boolean isCompleted() {
+        return result != null;
+    }
+    
+    public String getImageHash() {
+        return imageHash;
+    }
+    
+    public AnalysisQueue getJob() {
+        return job;
+    }
+    
+    public AnalysisResult getResult() {
+        return result;
+    }
+    
+    public AnalysisQueue.QueueStatus getStatus() {
+        return result != null ? AnalysisQueue.QueueStatus.COMPLETED : job.getStatus();
+    }
+}
\ No newline at end of file
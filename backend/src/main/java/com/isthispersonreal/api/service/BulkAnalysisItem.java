@@ -0,0 +1,56 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisResult;
+
+// Outcome for one image of a gallery upload, index is its position in the request with archives expanded
+public class BulkAnalysisItem {
+    
+    public enum Status {
+        COMPLETED,
+        // Another upload is analysing the image and did not finish in time, poll by hash
+        PROCESSING,
+        FAILED,
+        REJECTED,
+        RATE_LIMITED
+    }
+    
+    private final int index;
+    private final String fileName;
+    private final String imageHash;
+    private final Status status;
+    private final AnalysisResult result;
+    private final String error;
+    
+    public BulkAnalysisItem(int index, String fileName, String imageHash, Status status, AnalysisResult result, String error) {
+        this.index = index;
+        this.fileName = fileName;
+        this.imageHash = imageHash;
+        this.status = status;
+        this.result = result;
+        this.error = error;
+    }
+    
+    public int getIndex() {
+        return index;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public String getImageHash() {
+        return imageHash;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    public AnalysisResult getResult() {
+        return result;
+    }
+    
+    public String getError() {
+        return error;
+    }
+}
\ No newline at end of file
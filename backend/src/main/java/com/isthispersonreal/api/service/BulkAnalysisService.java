@@ -0,0 +1,460 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.model.User;
+import com.isthispersonreal.api.repository.AnalysisQueueRepository;
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import com.isthispersonreal.api.resilience.UploadRateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Analyses a whole profile gallery in one request: known images come from a single IN query, the rest go
+// to the ML service through the batch dispatcher, and results are stored in groups and streamed per image
+@Service
+public class BulkAnalysisService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BulkAnalysisService.class);
+    
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private ImageStorageService imageStorageService;
+    
+    @Autowired
+    private ImagePrescreener imagePrescreener;
+    
+    @Autowired
+    private PerceptualHasher perceptualHasher;
+    
+    @Autowired
+    private PerceptualHashIndex perceptualHashIndex;
+    
+    @Autowired
+    private AnalysisResultRepository analysisResultRepository;
+    
+    @Autowired
+    private AnalysisQueueRepository analysisQueueRepository;
+    
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+    
+    @Autowired
+    private AnalysisCoalescer analysisCoalescer;
+    
+    @Autowired
+    private MlBatchDispatcher mlBatchDispatcher;
+    
+    @Autowired
+    private UserAnalysisStatsService userAnalysisStatsService;
+    
+    @Autowired
+    private AnalysisStatsService analysisStatsService;
+    
+    @Autowired
+    private ExplanationService explanationService;
+    
+    @Autowired
+    private UploadRateLimiter uploadRateLimiter;
+    
+    @Autowired
+    @Qualifier("blockingScheduler")
+    private Scheduler blockingScheduler;
+    
+    @Value("${analysis.bulk.max-images}")
+    private int maxImages;
+    
+    @Value("${analysis.bulk.persist-batch-size}")
+    private int persistBatchSize;
+    
+    @Value("${analysis.bulk.persist-window-ms}")
+    private long persistWindowMs;
+    
+    @Value("${analysis.bulk.max-wait}")
+    private Duration maxWait;
+    
+    @Value("${analysis.upload.max-file-size}")
+    private DataSize maxFileSize;
+    
+    @Value("${analysis.phash.enabled}")
+    private boolean perceptualHashEnabled;
+    
+    @Value("${analysis.phash.max-distance}")
+    private int perceptualHashMaxDistance;
+    
+    @Value("${ml-service.timeout}")
+    private int mlServiceTimeout;
+    
+    // Images and zip archives of images; items are emitted as they are settled, not in request order
+    public Flux<BulkAnalysisItem> analyze(List<MultipartFile> files, String username) {
+        return Mono.fromCallable(() -> prepare(files, username))
+                .subscribeOn(blockingScheduler)
+                // Spooled files are discarded before the last item reaches the caller, not after
+                .flatMapMany(prepared -> Flux.using(() -> prepared,
+                        gallery -> Flux.concat(Flux.fromIterable(gallery.settled),
+                                Flux.merge(watchQueued(gallery), analyzeFresh(gallery))),
+                        Gallery::discard));
+    }
+    
+    private Gallery prepare(List<MultipartFile> files, String username) throws IOException {
+        User user = userService.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        
+        Gallery gallery = new Gallery(user);
+        try {
+            for (MultipartFile file : files) {
+                try (InputStream in = new BufferedInputStream(file.getInputStream())) {
+                    if (isZip(in)) {
+                        ingestArchive(gallery, in);
+                    } else {
+                        ingest(gallery, in, file.getOriginalFilename(), file.getContentType());
+                    }
+                }
+            }
+            classify(gallery);
+            return gallery;
+        } catch (IOException | RuntimeException e) {
+            gallery.discard();
+            throw e;
+        }
+    }
+    
+    private void ingestArchive(Gallery gallery, InputStream in) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName();
+            String fileName = name.substring(name.lastIndexOf('/') + 1);
+            // Folders and the metadata macOS adds to archives
+            if (entry.isDirectory() || fileName.isEmpty() || fileName.startsWith(".") || name.startsWith("__MACOSX/")) {
+                continue;
+            }
+            ingest(gallery, zip, fileName, null);
+        }
+    }
+    
+    private void ingest(Gallery gallery, InputStream in, String fileName, String contentType) {
+        if (gallery.uploads.size() >= maxImages) {
+            throw new RuntimeException("At most " + maxImages + " images can be analysed per request");
+        }
+        Upload upload = new Upload(gallery.uploads.size(), fileName);
+        gallery.uploads.add(upload);
+        try {
+            upload.image = imageStorageService.ingest(in, fileName, contentType, maxFileSize.toBytes());
+        } catch (IOException e) {
+            gallery.settle(upload, BulkAnalysisItem.Status.REJECTED, null, e.getMessage());
+        }
+    }
+    
+    private void classify(Gallery gallery) throws IOException {
+        // Same screening as a single upload, valid copies of one image are analysed once
+        Map<String, List<Upload>> byHash = new LinkedHashMap<>();
+        for (Upload upload : gallery.uploads) {
+            if (upload.image == null) {
+                continue;
+            }
+            try {
+                upload.info = imagePrescreener.inspect(upload.image.getSpoolPath());
+            } catch (RuntimeException e) {
+                gallery.settle(upload, BulkAnalysisItem.Status.REJECTED, null, e.getMessage());
+                continue;
+            }
+            byHash.computeIfAbsent(upload.image.getImageHash(), hash -> new ArrayList<>()).add(upload);
+        }
+        gallery.byHash.putAll(byHash);
+        if (byHash.isEmpty()) {
+            return;
+        }
+        
+        // One query for every image analysed before
+        for (AnalysisResult known : analysisResultRepository.findByImageHashIn(byHash.keySet())) {
+            if (byHash.remove(known.getImageHash()) != null) {
+                analysisResultCache.put(known);
+                gallery.settled.addAll(gallery.settleAll(known.getImageHash(), BulkAnalysisItem.Status.COMPLETED, known, null));
+            }
+        }
+        
+        if (perceptualHashEnabled) {
+            for (List<Upload> copies : new ArrayList<>(byHash.values())) {
+                Upload first = copies.get(0);
+                first.perceptualHash = perceptualHasher.compute(first.image.getSpoolPath());
+                Optional<AnalysisResult> nearDuplicate = findNearDuplicate(first.perceptualHash);
+                if (nearDuplicate.isPresent()) {
+                    byHash.remove(first.image.getImageHash());
+                    gallery.settled.addAll(gallery.settleAll(first.image.getImageHash(), BulkAnalysisItem.Status.COMPLETED, nearDuplicate.get(), null));
+                }
+            }
+        }
+        if (byHash.isEmpty()) {
+            return;
+        }
+        
+        // Images other uploads are already analysing are waited for rather than analysed twice
+        for (AnalysisQueue job : analysisQueueRepository.findByImageHashIn(byHash.keySet())) {
+            if ((job.getStatus() == AnalysisQueue.QueueStatus.PENDING || job.getStatus() == AnalysisQueue.QueueStatus.PROCESSING)
+                    && byHash.remove(job.getImageHash()) != null) {
+                gallery.queued.add(job.getImageHash());
+            }
+        }
+        
+        // Only images that will reach the ML service are charged against the upload rate limit
+        int granted = uploadRateLimiter.acquire(gallery.user, byHash.size());
+        for (List<Upload> copies : byHash.values()) {
+            Upload first = copies.get(0);
+            if (gallery.fresh.size() >= granted) {
+                gallery.settled.addAll(gallery.settleAll(first.image.getImageHash(), BulkAnalysisItem.Status.RATE_LIMITED, null,
+                        "Upload rate limit exceeded, please retry later"));
+                continue;
+            }
+            first.prepared = imagePrescreener.downscale(first.image, first.info);
+            gallery.fresh.add(first);
+        }
+    }
+    
+    private Optional<AnalysisResult> findNearDuplicate(Long perceptualHash) {
+        if (perceptualHash == null) {
+            return Optional.empty();
+        }
+        long resultId = perceptualHashIndex.findNearest(perceptualHash, perceptualHashMaxDistance);
+        if (resultId < 0) {
+            return Optional.empty();
+        }
+        return analysisResultRepository.findImageHashById(resultId)
+                .flatMap(hash -> analysisResultCache.get(hash, analysisResultRepository::findByImageHash));
+    }
+    
+    private Flux<BulkAnalysisItem> watchQueued(Gallery gallery) {
+        return Flux.fromIterable(gallery.queued)
+                .flatMap(imageHash -> analysisCoalescer.watchResult(imageHash, maxWait)
+                        .map(result -> gallery.settleAll(imageHash, BulkAnalysisItem.Status.COMPLETED, result, null))
+                        .defaultIfEmpty(gallery.settleAll(imageHash, BulkAnalysisItem.Status.PROCESSING, null, null))
+                        .onErrorResume(e -> Mono.just(gallery.settleAll(imageHash, BulkAnalysisItem.Status.FAILED, null, e.getMessage())))
+                        .flatMapIterable(items -> items));
+    }
+    
+    // The dispatcher packs these into ML batches; finished results are inserted in groups, one transaction each
+    private Flux<BulkAnalysisItem> analyzeFresh(Gallery gallery) {
+        return Flux.fromIterable(gallery.fresh)
+                .flatMap(upload -> Mono.defer(() -> {
+                    long startTime = System.currentTimeMillis();
+                    return Mono.fromFuture(mlBatchDispatcher.submit(new MlAnalysisRequest(
+                                    new FileSystemResource(upload.prepared.getSpoolPath()),
+                                    upload.fileName, upload.prepared.getContentType())))
+                            .timeout(Duration.ofMillis(mlServiceTimeout))
+                            .map(verdict -> Outcome.analyzed(upload, buildResult(gallery.user, upload, verdict, startTime)))
+                            .onErrorResume(e -> Mono.just(Outcome.failed(upload, "Analysis failed: " + e.getMessage())));
+                }))
+                .bufferTimeout(persistBatchSize, Duration.ofMillis(persistWindowMs))
+                .publishOn(blockingScheduler)
+                .concatMapIterable(outcomes -> persist(gallery, outcomes));
+    }
+    
+    private AnalysisResult buildResult(User user, Upload upload, MlVerdict verdict, long startTime) {
+        AnalysisResult result = new AnalysisResult(user, upload.image.getImageHash(), upload.fileName,
+                verdict.toDetectionLabel(), verdict.getConfidence());
+        result.setFileSize(upload.image.getSize());
+        result.setMimeType(upload.info.getFormat().getMimeType());
+        result.setPerceptualHash(upload.perceptualHash);
+        result.setScores(verdict.getScores());
+        result.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+        result.setMlModelVersion(verdict.getModelVersion());
+        return result;
+    }
+    
+    private List<BulkAnalysisItem> persist(Gallery gallery, List<Outcome> outcomes) {
+        List<BulkAnalysisItem> items = new ArrayList<>();
+        List<AnalysisResult> results = new ArrayList<>(outcomes.size());
+        for (Outcome outcome : outcomes) {
+            if (outcome.result != null) {
+                results.add(outcome.result);
+            } else {
+                items.addAll(gallery.settleAll(outcome.upload.image.getImageHash(), BulkAnalysisItem.Status.FAILED, null, outcome.error));
+            }
+        }
+        if (results.isEmpty()) {
+            return items;
+        }
+        
+        // A single upload of the same image may have finished meanwhile, keep its row rather than add a second one
+        List<AnalysisResult> stored = new ArrayList<>();
+        Map<String, AnalysisResult> fresh = new LinkedHashMap<>();
+        results.forEach(result -> fresh.put(result.getImageHash(), result));
+        for (AnalysisResult existing : analysisResultRepository.findByImageHashIn(fresh.keySet())) {
+            if (fresh.remove(existing.getImageHash()) != null) {
+                stored.add(existing);
+            }
+        }
+        results = new ArrayList<>(fresh.values());
+        
+        List<AnalysisResult> saved;
+        try {
+            saved = userAnalysisStatsService.saveResults(results);
+        } catch (DataIntegrityViolationException e) {
+            // Another upload stored one of these images after the check above and the batch rolled back
+            saved = new ArrayList<>();
+            for (AnalysisResult result : results) {
+                saveOrKeepExisting(gallery, result, saved, stored, items);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to store {} gallery results", results.size(), e);
+            for (AnalysisResult result : results) {
+                items.addAll(gallery.settleAll(result.getImageHash(), BulkAnalysisItem.Status.FAILED, null, "Failed to store result"));
+            }
+            return items;
+        }
+        
+        for (AnalysisResult result : stored) {
+            analysisResultCache.put(result);
+            analysisCoalescer.complete(result);
+            items.addAll(gallery.settleAll(result.getImageHash(), BulkAnalysisItem.Status.COMPLETED, result, null));
+        }
+        for (AnalysisResult result : saved) {
+            analysisStatsService.recordResult(result.getDetectionLabel());
+            analysisResultCache.put(result);
+            if (result.getPerceptualHash() != null) {
+                perceptualHashIndex.add(result.getId(), result.getPerceptualHash());
+            }
+            analysisCoalescer.complete(result);
+            explanationService.requestExplanation(result);
+            items.addAll(gallery.settleAll(result.getImageHash(), BulkAnalysisItem.Status.COMPLETED, result, null));
+        }
+        return items;
+    }
+    
+    // Inserts one result on its own against the unique image_hash index, on a conflict the row already stored wins
+    private void saveOrKeepExisting(Gallery gallery, AnalysisResult result, List<AnalysisResult> saved,
+                                    List<AnalysisResult> stored, List<BulkAnalysisItem> items) {
+        // Drop the id the rolled back batch assigned so this is a fresh insert
+        result.setId(null);
+        try {
+            saved.add(userAnalysisStatsService.saveResult(result));
+            return;
+        } catch (DataIntegrityViolationException e) {
+            Optional<AnalysisResult> existing = analysisResultRepository.findByImageHash(result.getImageHash());
+            if (existing.isPresent()) {
+                stored.add(existing.get());
+                return;
+            }
+            logger.error("Failed to store gallery result for {}", result.getImageHash(), e);
+        } catch (RuntimeException e) {
+            logger.error("Failed to store gallery result for {}", result.getImageHash(), e);
+        }
+        items.addAll(gallery.settleAll(result.getImageHash(), BulkAnalysisItem.Status.FAILED, null, "Failed to store result"));
+    }
+    
+    private static boolean isZip(InputStream in) throws IOException {
+        in.mark(ZIP_MAGIC.length);
+        byte[] head = in.readNBytes(ZIP_MAGIC.length);
+        in.reset();
+        for (int i = 0; i < ZIP_MAGIC.length; i++) {
+            if (head.length <= i || head[i] != ZIP_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private class Gallery {
+        
+        private final User user;
+        private final List<Upload> uploads = new ArrayList<>();
+        private final Map<String, List<Upload>> byHash = new HashMap<>();
+        private final List<BulkAnalysisItem> settled = new ArrayList<>();
+        private final List<String> queued = new ArrayList<>();
+        private final List<Upload> fresh = new ArrayList<>();
+        
+        private Gallery(User user) {
+            this.user = user;
+        }
+        
+        private BulkAnalysisItem settle(Upload upload, BulkAnalysisItem.Status status, AnalysisResult result, String error) {
+            BulkAnalysisItem item = new BulkAnalysisItem(upload.index, upload.fileName,
+                    upload.image != null ? upload.image.getImageHash() : null, status, result, error);
+            settled.add(item);
+            return item;
+        }
+        
+        // Every copy of an image in the request gets the same outcome
+        private List<BulkAnalysisItem> settleAll(String imageHash, BulkAnalysisItem.Status status, AnalysisResult result, String error) {
+            List<BulkAnalysisItem> items = new ArrayList<>();
+            for (Upload upload : byHash.getOrDefault(imageHash, List.of())) {
+                items.add(new BulkAnalysisItem(upload.index, upload.fileName, imageHash, status, result, error));
+            }
+            return items;
+        }
+        
+        private void discard() {
+            for (Upload upload : uploads) {
+                if (upload.image != null) {
+                    imageStorageService.discard(upload.image);
+                }
+                if (upload.prepared != null && upload.prepared != upload.image) {
+                    imageStorageService.discard(upload.prepared);
+                }
+            }
+        }
+    }
+    
+    private static class Upload {
+        
+        private final int index;
+        private final String fileName;
+        private IngestedImage image;
+        private IngestedImage prepared;
+        private ImagePrescreener.ImageInfo info;
+        private Long perceptualHash;
+        
+        private Upload(int index, String fileName) {
+            this.index = index;
+            this.fileName = fileName;
+        }
+    }
+    
+    private static class Outcome {
+        
+        private final Upload upload;
+        private final AnalysisResult result;
+        private final String error;
+        
+        private Outcome(Upload upload, AnalysisResult result, String error) {
+            this.upload = upload;
+            this.result = result;
+            this.error = error;
+        }
+        
+        private static Outcome analyzed(Upload upload, AnalysisResult result) {
+            return new Outcome(upload, result, null);
+        }
+        
+        private static Outcome failed(Upload upload, String error) {
+            return new Outcome(upload, null, error);
+        }
+    }
+}
\ No newline at end of file
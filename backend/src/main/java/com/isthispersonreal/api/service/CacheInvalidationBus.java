@@ -0,0 +1,69 @@
+package com.isthispersonreal.api.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+@Service
+public class CacheInvalidationBus {
+    
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationBus.class);
+    
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    
+    @Autowired
+    private RedisMessageListenerContainer listenerContainer;
+    
+    @Value("${analysis.cache.invalidation-channel}")
+    private String channel;
+    
+    // Lets a node ignore the echo of its own invalidations
+    private final String nodeId = UUID.randomUUID().toString();
+    
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(channel));
+    }
+    
+    public void subscribe(String cacheName, Consumer<String> listener) {
+        listeners.computeIfAbsent(cacheName, name -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+    
+    public void publish(String cacheName, String key) {
+        try {
+            redisTemplate.convertAndSend(channel, nodeId + "|" + cacheName + "|" + key);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to publish cache invalidation for {}:{}: {}", cacheName, key, e.getMessage());
+        }
+    }
+    
+    private void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\\|", 3);
+        if (parts.length != 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        
+        List<Consumer<String>> cacheListeners = listeners.get(parts[1]);
+        if (cacheListeners != null) {
+            cacheListeners.forEach(listener -> listener.accept(parts[2]));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// OpenAI explanations keyed on a bucketed form of the prompt inputs, so results that only differ in
+// the third decimal of a score share one completion
+@Service
+public class ExplanationCache {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ExplanationCache.class);
+    
+    // Bump when the prompt template changes so stale explanations are not served
+    private static final String KEY_PREFIX = "analysis:explanation:v1:";
+    
+    @Autowired
+    private ReactiveStringRedisTemplate redisTemplate;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${openai.model}")
+    private String model;
+    
+    @Value("${openai.explanation-cache.enabled}")
+    private boolean enabled;
+    
+    @Value("${openai.explanation-cache.confidence-bucket}")
+    private double confidenceBucket;
+    
+    @Value("${openai.explanation-cache.score-bucket}")
+    private double scoreBucket;
+    
+    @Value("${openai.explanation-cache.ttl}")
+    private Duration ttl;
+    
+    private Counter hits;
+    private Counter misses;
+    
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("openai.explanation.cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        misses = Counter.builder("openai.explanation.cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+    }
+    
+    public Key canonicalize(AnalysisResult result) {
+        long confidence = result.getConfidenceScore() != null ? Math.round(result.getConfidenceScore() / confidenceBucket) : -1;
+        SortedMap<String, Long> scores = new TreeMap<>();
+        if (result.getScores() != null) {
+            result.getScores().forEach((type, value) -> {
+                if (value != null) {
+                    scores.put(type, Math.round(value / scoreBucket));
+                }
+            });
+        }
+        return new Key(result.getDetectionLabel(), confidence, scores, confidenceBucket, scoreBucket);
+    }
+    
+    public Mono<String> get(Key key) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForValue().get(redisKey(key))
+                .doOnNext(explanation -> hits.increment())
+                .switchIfEmpty(Mono.fromRunnable(misses::increment))
+                .onErrorResume(e -> {
+                    logger.debug("Explanation cache read failed: {}", e.getMessage());
+                    misses.increment();
+                    return Mono.empty();
+                });
+    }
+    
+    public Mono<Void> put(Key key, String explanation) {
+        if (!enabled) {
+            return Mono.empty();
+        }
+        return redisTemplate.opsForValue().set(redisKey(key), explanation, ttl)
+                .onErrorResume(e -> {
+                    logger.debug("Explanation cache write failed: {}", e.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+    
+    private String redisKey(Key key) {
+        StringBuilder redisKey = new StringBuilder(KEY_PREFIX)
+                .append(model).append(':')
+                // Granularity is part of the key, bucket indexes mean nothing across different settings
+                .append(key.confidenceBucket).append('/').append(key.scoreBucket).append(':')
+                .append(key.label).append(':')
+                .append(key.confidence);
+        key.scores.forEach((type, bucket) -> redisKey.append(':').append(type).append('=').append(bucket));
+        return redisKey.toString();
+    }
+    
+    // The prompt is built from these values only, so every result with the same key gets the same prompt
+    public static class Key {
+        
+        private final AnalysisResult.DetectionLabel label;
+        private final long confidence;
+        private final SortedMap<String, Long> scores;
+        private final double confidenceBucket;
+        private final double scoreBucket;
+        
+        private Key(AnalysisResult.DetectionLabel label, long confidence, SortedMap<String, Long> scores,
+                    double confidenceBucket, double scoreBucket) {
+            this.label = label;
+            this.confidence = confidence;
+            this.scores = scores;
+            this.confidenceBucket = confidenceBucket;
+            this.scoreBucket = scoreBucket;
+        }
+        
+        public AnalysisResult.DetectionLabel getLabel() {
+            return label;
+        }
+        
+        public Double getConfidence() {
+            return confidence >= 0 ? confidence * confidenceBucket : null;
+        }
+        
+        public Map<String, Double> getScores() {
+            Map<String, Double> values = new TreeMap<>();
+            scores.forEach((type, bucket) -> values.put(type, bucket * scoreBucket));
+            return values;
+        }
+    }
+}
\ No newline at end of file
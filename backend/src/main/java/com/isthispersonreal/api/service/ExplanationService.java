@@ -0,0 +1,147 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Generates the OpenAI narrative after the verdict has been stored, so uploads never wait on the LLM
+@Service
+public class ExplanationService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ExplanationService.class);
+    
+    private static final String RESULT_CACHE = "analysisResults";
+    
+    @Autowired
+    private OpenAIService openAIService;
+    
+    @Autowired
+    private AnalysisResultRepository analysisResultRepository;
+    
+    @Autowired
+    private AnalysisResultCache analysisResultCache;
+    
+    @Autowired
+    private CacheInvalidationBus cacheInvalidationBus;
+    
+    @Autowired
+    @Qualifier("blockingScheduler")
+    private Scheduler blockingScheduler;
+    
+    // Shares the OpenAI bulkhead limit, but queues instead of rejecting
+    @Value("${resilience.bulkhead.openai.max-concurrent}")
+    private int maxConcurrent;
+    
+    private final Sinks.Many<AnalysisResult> requests = Sinks.many().unicast().onBackpressureBuffer();
+    private final ReentrantLock emitLock = new ReentrantLock();
+    
+    // Keyed by image hash, completed when the narrative for that result has been stored
+    private final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    
+    private Disposable pipeline;
+    
+    @PostConstruct
+    public void init() {
+        pipeline = requests.asFlux()
+                .flatMap(result -> openAIService.analyzeImageResultAsync(result)
+                        .publishOn(blockingScheduler)
+                        .doOnNext(explanation -> store(result, explanation))
+                        .onErrorResume(e -> {
+                            logger.warn("Explanation failed for {}: {}", result.getImageHash(), e.getMessage());
+                            fail(result.getImageHash(), e);
+                            return Mono.empty();
+                        }), maxConcurrent)
+                .subscribe();
+        
+        // Narratives stored by another node reach local SSE listeners through the cache channel
+        cacheInvalidationBus.subscribe(RESULT_CACHE, imageHash -> {
+            CompletableFuture<String> future = pending.get(imageHash);
+            if (future != null) {
+                analysisResultCache.get(imageHash, analysisResultRepository::findByImageHash)
+                        .map(AnalysisResult::getOpenaiAnalysis)
+                        .ifPresent(explanation -> complete(imageHash, explanation));
+            }
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        pipeline.dispose();
+    }
+    
+    public void requestExplanation(AnalysisResult result) {
+        if (result.getOpenaiAnalysis() == null) {
+            enqueue(result);
+        }
+    }
+    
+    // Completes with the narrative once it exists, generating it if nobody has asked yet; empty on timeout
+    public Mono<String> watchExplanation(String imageHash, Duration timeout) {
+        return Mono.fromCallable(() -> analysisResultCache.get(imageHash, analysisResultRepository::findByImageHash)
+                        .orElse(null))
+                .subscribeOn(blockingScheduler)
+                .flatMap(result -> result.getOpenaiAnalysis() != null
+                        ? Mono.just(result.getOpenaiAnalysis())
+                        : Mono.fromFuture(enqueue(result), true).timeout(timeout, Mono.empty()));
+    }
+    
+    private CompletableFuture<String> enqueue(AnalysisResult result) {
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = pending.putIfAbsent(result.getImageHash(), mine);
+        if (existing != null) {
+            return existing;
+        }
+        
+        // The sink needs serialized emission, a lock rather than synchronized keeps virtual threads unpinned
+        Sinks.EmitResult emitted;
+        emitLock.lock();
+        try {
+            emitted = requests.tryEmitNext(result);
+        } finally {
+            emitLock.unlock();
+        }
+        if (emitted.isFailure()) {
+            fail(result.getImageHash(), new IllegalStateException("Explanation queue rejected request: " + emitted));
+        }
+        return mine;
+    }
+    
+    private void store(AnalysisResult result, String explanation) {
+        analysisResultRepository.updateOpenaiAnalysis(result.getId(), explanation, LocalDateTime.now());
+        result.setOpenaiAnalysis(explanation);
+        analysisResultCache.put(result);
+        complete(result.getImageHash(), explanation);
+    }
+    
+    private void complete(String imageHash, String explanation) {
+        CompletableFuture<String> future = pending.remove(imageHash);
+        if (future != null) {
+            future.complete(explanation);
+        }
+    }
+    
+    private void fail(String imageHash, Throwable error) {
+        CompletableFuture<String> future = pending.remove(imageHash);
+        if (future != null) {
+            future.completeExceptionally(error);
+        }
+    }
+}
\ No newline at end of file
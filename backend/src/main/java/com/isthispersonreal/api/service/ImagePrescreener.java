@@ -0,0 +1,268 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.resilience.Bulkhead;
+import com.isthispersonreal.api.resilience.BulkheadFullException;
+import com.isthispersonreal.api.resilience.BulkheadRegistry;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+// Checks uploads by content before anything else touches them, and shrinks large ones for the ML service
+@Service
+public class ImagePrescreener {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ImagePrescreener.class);
+    
+    private static final String INVALID_IMAGE = "Please upload a valid image file (JPEG, PNG, GIF)";
+    
+    @Autowired
+    private BulkheadRegistry bulkheadRegistry;
+    
+    @Autowired
+    private ImageStorageService imageStorageService;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${analysis.ingest.min-dimension}")
+    private int minDimension;
+    
+    @Value("${analysis.ingest.max-pixels}")
+    private long maxPixels;
+    
+    @Value("${analysis.ingest.downscale.enabled}")
+    private boolean downscaleEnabled;
+    
+    @Value("${analysis.ingest.downscale.max-dimension}")
+    private int maxDimension;
+    
+    @Value("${analysis.ingest.downscale.jpeg-quality}")
+    private float jpegQuality;
+    
+    private DistributionSummary downscaleRatio;
+    
+    @PostConstruct
+    public void init() {
+        downscaleRatio = DistributionSummary.builder("image.downscale.ratio")
+                .description("Stored size of a downscaled upload relative to the original")
+                .register(meterRegistry);
+    }
+    
+    // Identifies the format from the leading bytes and reads the dimensions from the header, no pixels are decoded
+    public ImageInfo inspect(Path image) throws IOException {
+        Format format = sniff(image);
+        if (format == null) {
+            throw new RuntimeException(INVALID_IMAGE);
+        }
+        
+        int width;
+        int height;
+        try (ImageInputStream in = ImageIO.createImageInputStream(image.toFile())) {
+            ImageReader reader = reader(format, in);
+            try {
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("The image is corrupt or truncated");
+        }
+        
+        if (width < minDimension || height < minDimension) {
+            throw new RuntimeException("Image is too small, at least " + minDimension + "x" + minDimension + " pixels are needed");
+        }
+        // Decompression bombs are refused on their header, before the hasher or the ML service decodes them
+        if ((long) width * height > maxPixels) {
+            throw new RuntimeException("Image is too large, at most " + maxPixels + " pixels are accepted");
+        }
+        return new ImageInfo(format, width, height);
+    }
+    
+    // The copy to store and send for analysis: the upload itself, or a new spool file scaled down to max-dimension
+    public IngestedImage downscale(IngestedImage image, ImageInfo info) throws IOException {
+        if (!downscaleEnabled || Math.max(info.getWidth(), info.getHeight()) <= maxDimension) {
+            return image;
+        }
+        
+        Bulkhead decoders = bulkheadRegistry.get(BulkheadRegistry.IMAGE_DECODER);
+        try {
+            decoders.acquire();
+        } catch (BulkheadFullException e) {
+            // The original is a valid input too, it only costs bandwidth and ML time
+            logger.debug("Decoder pool busy, storing {} at full size", image.getImageHash());
+            return image;
+        }
+        
+        Path target = null;
+        try {
+            BufferedImage scaled = scale(decode(image.getSpoolPath(), info), info);
+            // Photos stay JPEG, PNG and GIF keep a lossless encoding
+            String formatName = info.getFormat() == Format.JPEG ? "jpeg" : "png";
+            target = imageStorageService.createSpoolFile();
+            write(scaled, formatName, target);
+            
+            long size = Files.size(target);
+            if (size >= image.getSize()) {
+                Files.deleteIfExists(target);
+                return image;
+            }
+            downscaleRatio.record((double) size / image.getSize());
+            return new IngestedImage(image.getImageHash(), target, size, image.getFileName(),
+                    info.getFormat() == Format.JPEG ? Format.JPEG.getMimeType() : Format.PNG.getMimeType());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not downscale {}, storing it at full size: {}", image.getImageHash(), e.getMessage());
+            if (target != null) {
+                Files.deleteIfExists(target);
+            }
+            return image;
+        } finally {
+            decoders.release();
+        }
+    }
+    
+    private BufferedImage decode(Path path, ImageInfo info) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
+            ImageReader reader = reader(info.getFormat(), in);
+            try {
+                // Subsampling while decoding keeps the raster within 2x of the target however large the source is
+                int step = Math.max(1, Math.max(info.getWidth(), info.getHeight()) / maxDimension);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    private BufferedImage scale(BufferedImage source, ImageInfo info) {
+        double factor = (double) maxDimension / Math.max(info.getWidth(), info.getHeight());
+        int width = Math.max(1, (int) Math.round(info.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(info.getHeight() * factor));
+        int type = info.getFormat() != Format.JPEG && source.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        
+        BufferedImage scaled = new BufferedImage(width, height, type);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+    
+    private void write(BufferedImage image, String formatName, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(formatName).next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(out);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed() && "jpeg".equals(formatName)) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+    
+    private ImageReader reader(Format format, ImageInputStream in) throws IOException {
+        if (in == null) {
+            throw new IOException("Unreadable image");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(format.name().toLowerCase());
+        if (!readers.hasNext()) {
+            throw new IOException("No decoder for " + format);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(in, true, true);
+        return reader;
+    }
+    
+    private Format sniff(Path image) throws IOException {
+        byte[] head = new byte[8];
+        int read;
+        try (InputStream in = Files.newInputStream(image)) {
+            read = in.readNBytes(head, 0, head.length);
+        }
+        if (read >= 3 && (head[0] & 0xff) == 0xFF && (head[1] & 0xff) == 0xD8 && (head[2] & 0xff) == 0xFF) {
+            return Format.JPEG;
+        }
+        if (read >= 8 && (head[0] & 0xff) == 0x89 && head[1] == 'P' && head[2] == 'N' && head[3] == 'G'
+                && head[4] == '\r' && head[5] == '\n' && head[6] == 0x1A && head[7] == '\n') {
+            return Format.PNG;
+        }
+        if (read >= 6 && head[0] == 'G' && head[1] == 'I' && head[2] == 'F' && head[3] == '8'
+                && (head[4] == '7' || head[4] == '9') && head[5] == 'a') {
+            return Format.GIF;
+        }
+        return null;
+    }
+    
+    public enum Format {
+        JPEG("image/jpeg"),
+        PNG("image/png"),
+        GIF("image/gif");
+        
+        private final String mimeType;
+        
+        Format(String mimeType) {
+            this.mimeType = mimeType;
+        }
+        
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+    
+    public static class ImageInfo {
+        
+        private final Format format;
+        private final int width;
+        private final int height;
+        
+        ImageInfo(Format format, int width, int height) {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+        }
+        
+        public Format getFormat() {
+            return format;
+        }
+        
+        public int getWidth() {
+            return width;
+        }
+        
+        public int getHeight() {
+            return height;
+        }
+    }
+}
\ No newline at end of file
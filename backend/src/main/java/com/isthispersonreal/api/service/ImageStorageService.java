@@ -0,0 +1,130 @@
+package com.isthispersonreal.api.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+@Service
+public class ImageStorageService {
+    
+    // Content-addressed spool for queued images; point it at a shared volume when running several instances
+    @Value("${analysis.storage.path}")
+    private String storagePath;
+    
+    @Value("${analysis.storage.buffer-size}")
+    private int bufferSize;
+    
+    private Path root;
+    
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(storagePath).toAbsolutePath();
+        Files.createDirectories(root);
+    }
+    
+    // Reads the upload exactly once, hashing it while it is spooled to a temp file next to the store
+    public IngestedImage ingest(MultipartFile file, long maxSize) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return ingest(in, file.getOriginalFilename(), file.getContentType(), maxSize);
+        }
+    }
+    
+    // Leaves the stream open, so the entries of an archive can be spooled one after another. The buffer is a
+    // plain heap array per call: with a virtual thread per request a thread-local direct buffer was allocated
+    // for every request anyway, and its native memory only came back once the GC got round to it.
+    public IngestedImage ingest(InputStream in, String fileName, String contentType, long maxSize) throws IOException {
+        MessageDigest digest = newDigest();
+        Path spool = createSpoolFile();
+        byte[] buffer = new byte[bufferSize];
+        long size = 0;
+        boolean spooled = false;
+        
+        try {
+            try (OutputStream target = Files.newOutputStream(spool, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    target.write(buffer, 0, read);
+                    size += read;
+                    if (size > maxSize) {
+                        throw new IOException("File is larger than " + maxSize + " bytes");
+                    }
+                }
+            }
+            spooled = true;
+        } finally {
+            // Whatever went wrong, unchecked errors from the stream included, leaves no spool file behind
+            if (!spooled) {
+                deleteQuietly(spool);
+            }
+        }
+        
+        return new IngestedImage(HexFormat.of().formatHex(digest.digest()), spool, size, fileName, contentType);
+    }
+    
+    // Temp file next to the store, so commit is an atomic rename
+    public Path createSpoolFile() throws IOException {
+        return Files.createTempFile(root, "upload-", ".part");
+    }
+    
+    // Moves an ingested upload into the store under its hash so queue workers can pick it up
+    public Path commit(IngestedImage image) throws IOException {
+        Path target = resolve(image.getImageHash());
+        if (Files.exists(target)) {
+            discard(image);
+            return target;
+        }
+        
+        Files.move(image.getSpoolPath(), target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+    
+    public void discard(IngestedImage image) {
+        deleteQuietly(image.getSpoolPath());
+    }
+    
+    public Path resolve(String imageHash) {
+        return root.resolve(imageHash);
+    }
+    
+    public boolean exists(String imageHash) {
+        return Files.exists(resolve(imageHash));
+    }
+    
+    public void delete(String imageHash) {
+        try {
+            Files.deleteIfExists(resolve(imageHash));
+        } catch (IOException e) {
+            // Leftover files are harmless, they get overwritten on the next upload of the same image
+        }
+    }
+    
+    private void deleteQuietly(Path spool) {
+        try {
+            Files.deleteIfExists(spool);
+        } catch (IOException e) {
+            // Stale spool files are harmless and never match a hash
+        }
+    }
+    
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+}
\ No newline at end of file
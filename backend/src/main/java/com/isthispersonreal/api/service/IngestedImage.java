@@ -0,0 +1,40 @@
+package com.isthispersonreal.api.service;
+
+import java.nio.file.Path;
+
+public class IngestedImage {
+    
+    private final String imageHash;
+    private final Path spoolPath;
+    private final long size;
+    private final String fileName;
+    private final String contentType;
+    
+    public IngestedImage(String imageHash, Path spoolPath, long size, String fileName, String contentType) {
+        this.imageHash = imageHash;
+        this.spoolPath = spoolPath;
+        this.size = size;
+        this.fileName = fileName;
+        this.contentType = contentType;
+    }
+    
+    public String getImageHash() {
+        return imageHash;
+    }
+    
+    public Path getSpoolPath() {
+        return spoolPath;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public String getContentType() {
+        return contentType;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.isthispersonreal.api.service;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+
+public class MlAnalysisRequest {
+    
+    private final Resource image;
+    private final String fileName;
+    private final MediaType mediaType;
+    
+    public MlAnalysisRequest(Resource image, String fileName, String mimeType) {
+        this.image = image;
+        this.fileName = fileName;
+        this.mediaType = mimeType != null ? MediaType.parseMediaType(mimeType) : MediaType.APPLICATION_OCTET_STREAM;
+    }
+    
+    public Resource getImage() {
+        return image;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+}
\ No newline at end of file
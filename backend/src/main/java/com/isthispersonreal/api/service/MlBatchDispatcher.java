@@ -0,0 +1,216 @@
+package com.isthispersonreal.api.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class MlBatchDispatcher {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MlBatchDispatcher.class);
+    
+    @Autowired
+    private MlServiceClient mlServiceClient;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private MlEndpointPool endpointPool;
+    
+    @Value("${ml-service.batch.enabled}")
+    private boolean batchingEnabled;
+    
+    @Value("${ml-service.batch.window-ms}")
+    private long windowMs;
+    
+    @Value("${ml-service.batch.max-size}")
+    private int maxBatchSize;
+    
+    // Per ML replica, batches are balanced over the pool when they are sent
+    @Value("${ml-service.batch.max-in-flight}")
+    private int maxInFlight;
+    
+    private final LinkedBlockingQueue<PendingRequest> pending = new LinkedBlockingQueue<>();
+    
+    private Semaphore inFlightBatches;
+    private Thread dispatcherThread;
+    private volatile boolean running;
+    
+    private DistributionSummary batchSize;
+    private Timer batchWait;
+    private Timer batchDuration;
+    private Timer requestLatency;
+    
+    @PostConstruct
+    public void start() {
+        batchSize = DistributionSummary.builder("ml.batch.size")
+                .description("Images sent per ML service call")
+                .register(meterRegistry);
+        batchWait = Timer.builder("ml.batch.wait")
+                .description("Time a request waited for its batch to be dispatched")
+                .register(meterRegistry);
+        batchDuration = Timer.builder("ml.batch.duration")
+                .description("ML service round trip per batch")
+                .register(meterRegistry);
+        requestLatency = Timer.builder("ml.request.latency")
+                .description("End-to-end latency of a single image analysis")
+                .register(meterRegistry);
+        
+        if (!batchingEnabled) {
+            return;
+        }
+        
+        inFlightBatches = new Semaphore(maxInFlight * endpointPool.size());
+        running = true;
+        dispatcherThread = new Thread(this::dispatchLoop, "ml-batch-dispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+    
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (dispatcherThread != null) {
+            dispatcherThread.interrupt();
+        }
+        PendingRequest request;
+        while ((request = pending.poll()) != null) {
+            request.future.completeExceptionally(new IllegalStateException("ML dispatcher shut down"));
+        }
+    }
+    
+    public CompletableFuture<MlVerdict> submit(MlAnalysisRequest request) {
+        PendingRequest pendingRequest = new PendingRequest(request);
+        
+        if (!batchingEnabled) {
+            send(List.of(pendingRequest));
+        } else if (!running) {
+            pendingRequest.future.completeExceptionally(new IllegalStateException("ML dispatcher shut down"));
+        } else {
+            pending.add(pendingRequest);
+        }
+        return pendingRequest.future;
+    }
+    
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                PendingRequest first = pending.take();
+                List<PendingRequest> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                
+                // Collect whatever else arrives within the window, the first request bounds the wait
+                long deadline = first.enqueuedAt + TimeUnit.MILLISECONDS.toNanos(windowMs);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingRequest next = remaining > 0
+                            ? pending.poll(remaining, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                
+                inFlightBatches.acquire();
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("ML batch dispatcher error", e);
+            }
+        }
+    }
+    
+    private void send(List<PendingRequest> batch) {
+        long dispatchedAt = System.nanoTime();
+        for (PendingRequest request : batch) {
+            batchWait.record(dispatchedAt - request.enqueuedAt, TimeUnit.NANOSECONDS);
+        }
+        batchSize.record(batch.size());
+        
+        // Deferred, so a call that fails before it is sent still releases its permit and fails the batch
+        if (batch.size() == 1) {
+            Mono.defer(() -> mlServiceClient.analyze(batch.get(0).request))
+                    .doFinally(signal -> onBatchFinished(dispatchedAt))
+                    .subscribe(result -> batch.get(0).resolve(result),
+                            error -> batch.get(0).fail(error));
+            return;
+        }
+        
+        List<MlAnalysisRequest> requests = new ArrayList<>(batch.size());
+        for (PendingRequest request : batch) {
+            requests.add(request.request);
+        }
+        
+        Mono.defer(() -> mlServiceClient.analyzeBatch(requests))
+                .doFinally(signal -> onBatchFinished(dispatchedAt))
+                .subscribe(results -> fanOut(batch, results),
+                        error -> batch.forEach(request -> request.fail(error)));
+    }
+    
+    private void fanOut(List<PendingRequest> batch, List<MlVerdict> results) {
+        for (int i = 0; i < batch.size(); i++) {
+            PendingRequest request = batch.get(i);
+            if (i >= results.size()) {
+                request.fail(new IllegalStateException("ML service returned " + results.size()
+                        + " results for a batch of " + batch.size()));
+                continue;
+            }
+            request.resolve(results.get(i));
+        }
+    }
+    
+    private void onBatchFinished(long dispatchedAt) {
+        batchDuration.record(System.nanoTime() - dispatchedAt, TimeUnit.NANOSECONDS);
+        if (inFlightBatches != null && batchingEnabled) {
+            inFlightBatches.release();
+        }
+    }
+    
+    private class PendingRequest {
+        
+        private final MlAnalysisRequest request;
+        private final long enqueuedAt = System.nanoTime();
+        private final CompletableFuture<MlVerdict> future = new CompletableFuture<>();
+        
+        private PendingRequest(MlAnalysisRequest request) {
+            this.request = request;
+        }
+        
+        // A verdict carrying an error fails the request whether it came alone or in a batch
+        private void resolve(MlVerdict result) {
+            if (result.isFailed()) {
+                fail(new IllegalStateException("ML analysis failed: " + result.getError()));
+            } else {
+                complete(result);
+            }
+        }
+        
+        private void complete(MlVerdict result) {
+            requestLatency.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+            future.complete(result);
+        }
+        
+        private void fail(Throwable error) {
+            requestLatency.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+            future.completeExceptionally(error);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,265 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.resilience.DownstreamGuard;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Client-side balancing over the ML inference replicas. Each call goes to the cheaper of two random
+// replicas (outstanding calls times average latency); replicas failing /health, failing calls in a row
+// or running far slower than the rest are taken out of rotation for a while.
+@Component
+public class MlEndpointPool {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MlEndpointPool.class);
+    
+    // Weight of the newest sample in the latency average
+    private static final double LATENCY_SMOOTHING = 0.2;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${ml-service.urls}")
+    private String[] urls;
+    
+    @Value("${ml-service.health.timeout}")
+    private Duration healthTimeout;
+    
+    @Value("${ml-service.ejection.consecutive-failures}")
+    private int ejectAfterFailures;
+    
+    @Value("${ml-service.ejection.duration}")
+    private Duration ejectionDuration;
+    
+    @Value("${ml-service.ejection.latency-factor}")
+    private double latencyFactor;
+    
+    private List<MlEndpoint> endpoints;
+    private WebClient healthClient;
+    
+    @PostConstruct
+    public void init() {
+        List<MlEndpoint> configured = new ArrayList<>();
+        for (String url : urls) {
+            String trimmed = url.trim();
+            if (!trimmed.isEmpty()) {
+                configured.add(new MlEndpoint(trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed));
+            }
+        }
+        if (configured.isEmpty()) {
+            throw new IllegalStateException("No ML service endpoints configured");
+        }
+        endpoints = Collections.unmodifiableList(configured);
+        healthClient = WebClient.create();
+        
+        for (MlEndpoint endpoint : endpoints) {
+            Gauge.builder("ml.endpoint.outstanding", endpoint, MlEndpoint::getOutstanding)
+                    .tag("url", endpoint.getUrl())
+                    .register(meterRegistry);
+            Gauge.builder("ml.endpoint.latency", endpoint, MlEndpoint::getAverageLatencyMs)
+                    .tag("url", endpoint.getUrl())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("ml.endpoint.available", endpoint, e -> e.isAvailable() ? 1 : 0)
+                    .tag("url", endpoint.getUrl())
+                    .register(meterRegistry);
+        }
+    }
+    
+    public <T> Mono<T> call(Function<MlEndpoint, Mono<T>> call) {
+        return Mono.defer(() -> {
+            MlEndpoint endpoint = choose();
+            endpoint.outstanding.incrementAndGet();
+            long start = System.nanoTime();
+            // Accounted before the signal travels on, so the caller's next call already sees the outcome
+            AtomicBoolean done = new AtomicBoolean();
+            return call.apply(endpoint)
+                    .doOnSuccess(value -> {
+                        if (done.compareAndSet(false, true)) {
+                            endpoint.outstanding.decrementAndGet();
+                            onSuccess(endpoint, System.nanoTime() - start);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (done.compareAndSet(false, true)) {
+                            endpoint.outstanding.decrementAndGet();
+                            if (DownstreamGuard.isDownstreamFailure(e)) {
+                                onFailure(endpoint);
+                            } else {
+                                onSuccess(endpoint, System.nanoTime() - start);
+                            }
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (done.compareAndSet(false, true)) {
+                            endpoint.outstanding.decrementAndGet();
+                        }
+                    });
+        });
+    }
+    
+    public MlEndpoint choose() {
+        List<MlEndpoint> candidates = new ArrayList<>(endpoints.size());
+        for (MlEndpoint endpoint : endpoints) {
+            if (endpoint.isAvailable()) {
+                candidates.add(endpoint);
+            }
+        }
+        // Every replica looks bad, spreading the load beats failing every call
+        if (candidates.isEmpty()) {
+            candidates = endpoints;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        MlEndpoint a = candidates.get(first);
+        MlEndpoint b = candidates.get(second);
+        return a.cost() <= b.cost() ? a : b;
+    }
+    
+    public int size() {
+        return endpoints.size();
+    }
+    
+    public List<MlEndpoint> getEndpoints() {
+        return endpoints;
+    }
+    
+    @Scheduled(fixedDelayString = "${ml-service.health.interval-ms}")
+    public void checkHealth() {
+        for (MlEndpoint endpoint : endpoints) {
+            healthClient.get()
+                    .uri(endpoint.getUrl() + "/health")
+                    .retrieve()
+                    .toBodilessEntity()
+                    .timeout(healthTimeout)
+                    .subscribe(response -> setHealthy(endpoint, true),
+                            error -> setHealthy(endpoint, false));
+        }
+    }
+    
+    private void setHealthy(MlEndpoint endpoint, boolean healthy) {
+        if (endpoint.healthy != healthy) {
+            logger.info("ML endpoint {} is {}", endpoint.getUrl(), healthy ? "healthy" : "unhealthy");
+        }
+        endpoint.healthy = healthy;
+    }
+    
+    private void onSuccess(MlEndpoint endpoint, long rttNanos) {
+        endpoint.consecutiveFailures.set(0);
+        double sample = rttNanos / 1_000_000.0;
+        double average = endpoint.averageLatencyMs;
+        endpoint.averageLatencyMs = average == 0 ? sample : average + LATENCY_SMOOTHING * (sample - average);
+        
+        // Outliers only make sense against the rest of the pool, and one replica must always remain
+        if (endpoints.size() > 1 && countAvailable() > 1) {
+            double median = medianLatency(endpoint);
+            if (median > 0 && endpoint.averageLatencyMs > latencyFactor * median) {
+                eject(endpoint, String.format("%.0f ms average against a %.0f ms median", endpoint.averageLatencyMs, median));
+            }
+        }
+    }
+    
+    private void onFailure(MlEndpoint endpoint) {
+        if (endpoint.consecutiveFailures.incrementAndGet() >= ejectAfterFailures) {
+            eject(endpoint, endpoint.consecutiveFailures.get() + " consecutive failures");
+        }
+    }
+    
+    private void eject(MlEndpoint endpoint, String reason) {
+        if (!endpoint.isEjected()) {
+            logger.warn("Ejecting ML endpoint {} for {}: {}", endpoint.getUrl(), ejectionDuration, reason);
+        }
+        endpoint.ejectedUntil = System.nanoTime() + ejectionDuration.toNanos();
+        // Comes back with a clean slate, judged on fresh samples only
+        endpoint.consecutiveFailures.set(0);
+        endpoint.averageLatencyMs = 0;
+    }
+    
+    private int countAvailable() {
+        int available = 0;
+        for (MlEndpoint endpoint : endpoints) {
+            if (endpoint.isAvailable()) {
+                available++;
+            }
+        }
+        return available;
+    }
+    
+    private double medianLatency(MlEndpoint excluded) {
+        double[] latencies = endpoints.stream()
+                .filter(endpoint -> endpoint != excluded && endpoint.isAvailable() && endpoint.averageLatencyMs > 0)
+                .mapToDouble(endpoint -> endpoint.averageLatencyMs)
+                .toArray();
+        if (latencies.length == 0) {
+            return 0;
+        }
+        Arrays.sort(latencies);
+        int middle = latencies.length / 2;
+        return latencies.length % 2 == 1 ? latencies[middle] : (latencies[middle - 1] + latencies[middle]) / 2;
+    }
+    
+    public static class MlEndpoint {
+        
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile double averageLatencyMs;
+        private volatile boolean healthy = true;
+        private volatile long ejectedUntil = System.nanoTime();
+        
+        private MlEndpoint(String url) {
+            this.url = url;
+        }
+        
+        public String getUrl() {
+            return url;
+        }
+        
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+        
+        public double getAverageLatencyMs() {
+            return averageLatencyMs;
+        }
+        
+        public boolean isEjected() {
+            return System.nanoTime() - ejectedUntil < 0;
+        }
+        
+        public boolean isAvailable() {
+            return healthy && !isEjected();
+        }
+        
+        // Unknown latency counts as 1 ms, so fresh replicas get tried
+        private double cost() {
+            return (outstanding.get() + 1) * Math.max(1, averageLatencyMs);
+        }
+    }
+}
\ No newline at end of file
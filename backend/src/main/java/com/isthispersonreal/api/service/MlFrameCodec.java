@@ -0,0 +1,169 @@
+package com.isthispersonreal.api.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Length-prefixed binary frames for /analyze_frames, big-endian, mirrored by ml-service/frame_protocol.py.
+// Request: version, payload kind, tensor height and width (0 for encoded images), item count, then per item
+// a u32 length and the payload. Response: version, item count, then per item a status byte followed by the
+// label id, confidence, scores and model version, or by an error message.
+public final class MlFrameCodec {
+    
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType("application/x-ml-frames");
+    
+    private static final byte VERSION = 1;
+    
+    public static final byte KIND_IMAGE = 0;
+    public static final byte KIND_RGB8_TENSOR = 1;
+    
+    private static final byte STATUS_OK = 0;
+    
+    // Append only, the position of a name is its id on the wire
+    private static final String[] DICTIONARY = {"REAL", "AI_GENERATED", "UNCERTAIN"};
+    private static final byte[][] DICTIONARY_BYTES = Arrays.stream(DICTIONARY)
+            .map(name -> name.getBytes(StandardCharsets.UTF_8))
+            .toArray(byte[][]::new);
+    
+    private static final int INLINE_NAME = 0xFF;
+    
+    private MlFrameCodec() {}
+    
+    public static DataBuffer header(DataBufferFactory factory, byte kind, int height, int width, int count) {
+        DataBuffer header = factory.allocateBuffer(8);
+        header.write(VERSION);
+        header.write(kind);
+        writeShort(header, height);
+        writeShort(header, width);
+        writeShort(header, count);
+        return header;
+    }
+    
+    public static DataBuffer length(DataBufferFactory factory, long length) {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Frame payload too large: " + length);
+        }
+        DataBuffer prefix = factory.allocateBuffer(4);
+        prefix.write(new byte[]{(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        return prefix;
+    }
+    
+    public static List<MlVerdict> decodeResults(ByteBuffer in) {
+        if (in.get() != VERSION) {
+            throw new IllegalStateException("Unsupported ML frame version");
+        }
+        int count = Short.toUnsignedInt(in.getShort());
+        List<MlVerdict> verdicts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.get() != STATUS_OK) {
+                verdicts.add(MlVerdict.failed(readString(in, Short.toUnsignedInt(in.getShort()))));
+                continue;
+            }
+            String label = readName(in);
+            double confidence = in.getDouble();
+            int scoreCount = Byte.toUnsignedInt(in.get());
+            Map<String, Double> scores = new LinkedHashMap<>(scoreCount * 2);
+            for (int s = 0; s < scoreCount; s++) {
+                scores.put(readName(in), in.getDouble());
+            }
+            String modelVersion = readString(in, Byte.toUnsignedInt(in.get()));
+            verdicts.add(new MlVerdict(label, confidence, scores, modelVersion));
+        }
+        return verdicts;
+    }
+    
+    // Decodes and stretches the image to size x size like cv2.resize in preprocess_image, as packed RGB bytes
+    public static byte[] toRgbTensor(InputStream image, int size) throws IOException {
+        BufferedImage decoded = ImageIO.read(image);
+        if (decoded == null) {
+            throw new IllegalArgumentException("Unsupported image format");
+        }
+        
+        BufferedImage resized = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(decoded, 0, 0, size, size, null);
+        } finally {
+            graphics.dispose();
+        }
+        
+        // The raster is BGR, swap in place
+        byte[] pixels = ((DataBufferByte) resized.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i += 3) {
+            byte blue = pixels[i];
+            pixels[i] = pixels[i + 2];
+            pixels[i + 2] = blue;
+        }
+        return pixels;
+    }
+    
+    private static void writeShort(DataBuffer buffer, int value) {
+        if (value < 0 || value > 0xFFFF) {
+            throw new IllegalArgumentException("Value does not fit a frame field: " + value);
+        }
+        buffer.write(new byte[]{(byte) (value >>> 8), (byte) value});
+    }
+    
+    // Known names resolve to the shared constants without allocating
+    private static String readName(ByteBuffer in) {
+        int id = Byte.toUnsignedInt(in.get());
+        if (id != INLINE_NAME) {
+            return DICTIONARY[id];
+        }
+        int length = Byte.toUnsignedInt(in.get());
+        for (int i = 0; i < DICTIONARY_BYTES.length; i++) {
+            if (matches(in, DICTIONARY_BYTES[i], length)) {
+                in.position(in.position() + length);
+                return DICTIONARY[i];
+            }
+        }
+        return readString(in, length);
+    }
+    
+    private static boolean matches(ByteBuffer in, byte[] name, int length) {
+        if (name.length != length) {
+            return false;
+        }
+        int position = in.position();
+        for (int i = 0; i < length; i++) {
+            if (in.get(position + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static String readString(ByteBuffer in, int length) {
+        // Fail a truncated frame like the fixed-size reads do, instead of reading past the limit
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(in.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,163 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.resilience.BulkheadRegistry;
+import com.isthispersonreal.api.resilience.DownstreamGuard;
+import com.isthispersonreal.api.resilience.DownstreamGuardRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class MlServiceClient {
+    
+    private static final String PROTOCOL_FRAMES = "frames";
+    
+    private static final int READ_BUFFER_SIZE = 8192;
+    
+    @Value("${ml-service.timeout}")
+    private int mlServiceTimeout;
+    
+    // Only the small verdicts are buffered, images are streamed from the spool file
+    @Value("${ml-service.max-response-size}")
+    private int maxResponseSize;
+    
+    @Value("${ml-service.protocol}")
+    private String protocol;
+    
+    @Value("${ml-service.tensor.enabled}")
+    private boolean sendTensors;
+    
+    @Value("${ml-service.tensor.size}")
+    private int tensorSize;
+    
+    @Autowired
+    private DownstreamGuardRegistry downstreamGuardRegistry;
+    
+    @Autowired
+    private MlEndpointPool endpointPool;
+    
+    private final DataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+    
+    private WebClient webClient;
+    private DownstreamGuard guard;
+    private boolean useFrames;
+    
+    @PostConstruct
+    public void init() {
+        webClient = WebClient.builder()
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(maxResponseSize))
+                .build();
+        guard = downstreamGuardRegistry.get(BulkheadRegistry.ML_SERVICE);
+        useFrames = PROTOCOL_FRAMES.equalsIgnoreCase(protocol);
+        if (sendTensors && !useFrames) {
+            throw new IllegalStateException("ml-service.tensor.enabled requires ml-service.protocol=frames");
+        }
+    }
+    
+    public Mono<MlVerdict> analyze(MlAnalysisRequest request) {
+        if (useFrames) {
+            return analyzeFrames(List.of(request)).map(verdicts -> verdicts.get(0));
+        }
+        
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        addPart(body, "file", request);
+        
+        return guard.protect(() -> endpointPool.call(endpoint -> webClient.post()
+                .uri(endpoint.getUrl() + "/analyze")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .retrieve()
+                .bodyToMono(MlVerdict.class)
+                .timeout(Duration.ofMillis(mlServiceTimeout))));
+    }
+    
+    // Results come back in the same order as the submitted files
+    public Mono<List<MlVerdict>> analyzeBatch(List<MlAnalysisRequest> requests) {
+        if (useFrames) {
+            return analyzeFrames(requests);
+        }
+        
+        MultipartBodyBuilder body = new MultipartBodyBuilder();
+        for (MlAnalysisRequest request : requests) {
+            addPart(body, "files", request);
+        }
+        
+        // A batch holds one slot of the limit and goes to a single replica, its latency is what the ML service sees per call
+        return guard.protect(() -> endpointPool.call(endpoint -> webClient.post()
+                .uri(endpoint.getUrl() + "/analyze_batch")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .body(BodyInserters.fromMultipartData(body.build()))
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, List<MlVerdict>>>() {})
+                .map(response -> response.getOrDefault("results", List.of()))
+                .timeout(Duration.ofMillis(mlServiceTimeout))));
+    }
+    
+    private Mono<List<MlVerdict>> analyzeFrames(List<MlAnalysisRequest> requests) {
+        return guard.protect(() -> endpointPool.call(endpoint -> webClient.post()
+                .uri(endpoint.getUrl() + "/analyze_frames")
+                .contentType(MlFrameCodec.MEDIA_TYPE)
+                .accept(MlFrameCodec.MEDIA_TYPE)
+                .body(frames(requests), DataBuffer.class)
+                .retrieve()
+                .bodyToMono(ByteBuffer.class)
+                .map(MlFrameCodec::decodeResults)
+                .flatMap(verdicts -> verdicts.size() == requests.size() ? Mono.just(verdicts)
+                        : Mono.error(new IllegalStateException("ML service returned " + verdicts.size()
+                                + " results for a batch of " + requests.size())))
+                .timeout(Duration.ofMillis(mlServiceTimeout))));
+    }
+    
+    private Flux<DataBuffer> frames(List<MlAnalysisRequest> requests) {
+        if (sendTensors) {
+            DataBuffer header = MlFrameCodec.header(bufferFactory, MlFrameCodec.KIND_RGB8_TENSOR, tensorSize, tensorSize, requests.size());
+            return Flux.concat(Mono.just(header), Flux.fromIterable(requests)
+                    .concatMap(request -> Mono.fromCallable(() -> tensor(request))
+                            // Decoding and resizing is CPU work, keep it off the event loop
+                            .subscribeOn(Schedulers.parallel())
+                            .flatMapMany(tensor -> Flux.just(MlFrameCodec.length(bufferFactory, tensor.length),
+                                    bufferFactory.wrap(tensor)))));
+        }
+        
+        DataBuffer header = MlFrameCodec.header(bufferFactory, MlFrameCodec.KIND_IMAGE, 0, 0, requests.size());
+        return Flux.concat(Mono.just(header), Flux.fromIterable(requests)
+                .concatMap(request -> Flux.concat(
+                        Mono.fromCallable(() -> MlFrameCodec.length(bufferFactory, request.getImage().contentLength())),
+                        DataBufferUtils.read(request.getImage(), bufferFactory, READ_BUFFER_SIZE))));
+    }
+    
+    private byte[] tensor(MlAnalysisRequest request) {
+        try (InputStream image = request.getImage().getInputStream()) {
+            return MlFrameCodec.toRgbTensor(image, tensorSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private void addPart(MultipartBodyBuilder body, String name, MlAnalysisRequest request) {
+        body.part(name, request.getImage())
+                .filename(request.getFileName() != null ? request.getFileName() : "image")
+                .contentType(request.getMediaType());
+    }
+}
\ No newline at end of file
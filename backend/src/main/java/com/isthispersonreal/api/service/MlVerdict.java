@@ -0,0 +1,101 @@
+package com.isthispersonreal.api.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.isthispersonreal.api.model.AnalysisResult;
+
+import java.util.Map;
+
+// One ML service answer, read from either the JSON or the binary frame protocol
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MlVerdict {
+    
+    private String label;
+    private double confidence;
+    private Map<String, Double> scores;
+    
+    @JsonProperty("model_version")
+    private String modelVersion;
+    
+    // Set when the service could not analyze the image, the other fields are then meaningless
+    private String error;
+    private Boolean success;
+    
+    public MlVerdict() {}
+    
+    public MlVerdict(String label, double confidence, Map<String, Double> scores, String modelVersion) {
+        this.label = label;
+        this.confidence = confidence;
+        this.scores = scores;
+        this.modelVersion = modelVersion;
+    }
+    
+    public static MlVerdict failed(String error) {
+        MlVerdict verdict = new MlVerdict();
+        verdict.setError(error);
+        verdict.setSuccess(false);
+        return verdict;
+    }
+    
+    public AnalysisResult.DetectionLabel toDetectionLabel() {
+        if ("AI".equalsIgnoreCase(label) || "ai_generated".equalsIgnoreCase(label)) {
+            return AnalysisResult.DetectionLabel.AI_GENERATED;
+        } else if ("REAL".equalsIgnoreCase(label)) {
+            return AnalysisResult.DetectionLabel.REAL;
+        } else {
+            return AnalysisResult.DetectionLabel.UNCERTAIN;
+        }
+    }
+    
+    public boolean isFailed() {
+        return Boolean.FALSE.equals(success) || error != null;
+    }
+    
+    public String getLabel() {
+        return label;
+    }
+    
+    public void setLabel(String label) {
+        this.label = label;
+    }
+    
+    public double getConfidence() {
+        return confidence;
+    }
+    
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+    
+    public Map<String, Double> getScores() {
+        return scores;
+    }
+    
+    public void setScores(Map<String, Double> scores) {
+        this.scores = scores;
+    }
+    
+    public String getModelVersion() {
+        return modelVersion;
+    }
+    
+    public void setModelVersion(String modelVersion) {
+        this.modelVersion = modelVersion;
+    }
+    
+    public String getError() {
+        return error;
+    }
+    
+    public void setError(String error) {
+        this.error = error;
+    }
+    
+    public Boolean getSuccess() {
+        return success;
+    }
+    
+    public void setSuccess(Boolean success) {
+        this.success = success;
+    }
+}
\ No newline at end of file
@@ -1,10 +1,18 @@
 package com.isthispersonreal.api.service;
 
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.resilience.BulkheadRegistry;
+import com.isthispersonreal.api.resilience.DownstreamGuard;
+import com.isthispersonreal.api.resilience.DownstreamGuardRegistry;
+import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -22,61 +30,84 @@ public class OpenAIService {
     @Value("${openai.temperature}")
     private double temperature;
     
-    private final WebClient webClient = WebClient.builder()
-            .baseUrl("https://api.openai.com/v1")
-            .defaultHeader("Authorization", "Bearer " + apiKey)
-            .build();
+    @Autowired
+    private ExplanationCache explanationCache;
+    
+    @Autowired
+    private DownstreamGuardRegistry downstreamGuardRegistry;
+    
+    private WebClient webClient;
+    private DownstreamGuard guard;
+    
+    // Built after injection, a field initializer would capture a null API key
+    @PostConstruct
+    public void init() {
+        webClient = WebClient.builder()
+                .baseUrl("https://api.openai.com/v1")
+                .defaultHeader("Authorization", "Bearer " + apiKey)
+                .build();
+        guard = downstreamGuardRegistry.get(BulkheadRegistry.OPENAI);
+    }
     
     public String analyzeImageResult(AnalysisResult result) {
+        return analyzeImageResultAsync(result).block();
+    }
+    
+    // Emits only a real narrative, every failure is an error so the explanation stays unset and
+    // the next request for it tries again
+    public Mono<String> analyzeImageResultAsync(AnalysisResult result) {
         if (apiKey == null || apiKey.isEmpty()) {
-            return "OpenAI analysis not available - API key not configured";
+            return Mono.error(new IllegalStateException("OpenAI analysis not available - API key not configured"));
         }
         
-        try {
-            String prompt = buildAnalysisPrompt(result);
-            
-            Map<String, Object> requestBody = Map.of(
-                "model", model,
-                "messages", Map.of("role", "user", "content", prompt),
-                "max_tokens", maxTokens,
-                "temperature", temperature
-            );
-            
-            Map<String, Object> response = webClient.post()
-                    .uri("/chat/completions")
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .block();
-            
-            if (response != null && response.containsKey("choices")) {
-                @SuppressWarnings("unchecked")
-                java.util.List<Map<String, Object>> choices = (java.util.List<Map<String, Object>>) response.get("choices");
-                if (!choices.isEmpty()) {
-                    Map<String, Object> choice = choices.get(0);
-                    Map<String, Object> message = (Map<String, Object>) choice.get("message");
-                    return (String) message.get("content");
-                }
+        // Near-identical verdicts share one completion, only fresh completions are cached
+        ExplanationCache.Key key = explanationCache.canonicalize(result);
+        return explanationCache.get(key)
+                .switchIfEmpty(Mono.defer(() -> complete(buildAnalysisPrompt(key))
+                        .flatMap(explanation -> explanationCache.put(key, explanation).thenReturn(explanation))))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Unable to generate OpenAI analysis")));
+    }
+    
+    private Mono<String> complete(String prompt) {
+        Map<String, Object> requestBody = Map.of(
+            "model", model,
+            "messages", Map.of("role", "user", "content", prompt),
+            "max_tokens", maxTokens,
+            "temperature", temperature
+        );
+        
+        return guard.protect(() -> webClient.post()
+                .uri("/chat/completions")
+                .bodyValue(requestBody)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {}))
+                .mapNotNull(this::extractContent);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private String extractContent(Map<String, Object> response) {
+        if (response.containsKey("choices")) {
+            List<Map<String, Object>> choices = (List<Map<String, Object>>) response.get("choices");
+            if (!choices.isEmpty()) {
+                Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
+                return (String) message.get("content");
             }
-            
-            return "Unable to generate OpenAI analysis";
-            
-        } catch (Exception e) {
-            return "OpenAI analysis failed: " + e.getMessage();
         }
+        return null;
     }
     
-    private String buildAnalysisPrompt(AnalysisResult result) {
+    private String buildAnalysisPrompt(ExplanationCache.Key key) {
         StringBuilder prompt = new StringBuilder();
         prompt.append("Analyze the following AI face detection result and provide insights:\n\n");
-        prompt.append("Detection Label: ").append(result.getDetectionLabel()).append("\n");
-        prompt.append("Confidence Score: ").append(String.format("%.2f%%", result.getConfidenceScore() * 100)).append("\n");
-        prompt.append("Processing Time: ").append(result.getProcessingTimeMs()).append("ms\n");
+        prompt.append("Detection Label: ").append(key.getLabel()).append("\n");
+        if (key.getConfidence() != null) {
+            prompt.append("Confidence Score: ").append(String.format("%.2f%%", key.getConfidence() * 100)).append("\n");
+        }
         
-        if (result.getScores() != null && !result.getScores().isEmpty()) {
+        if (!key.getScores().isEmpty()) {
             prompt.append("Detailed Scores:\n");
-            result.getScores().forEach((key, value) -> 
-                prompt.append("- ").append(key).append(": ").append(String.format("%.2f%%", value * 100)).append("\n"));
+            key.getScores().forEach((type, value) -> 
+                prompt.append("- ").append(type).append(": ").append(String.format("%.2f%%", value * 100)).append("\n"));
         }
         
         prompt.append("\nPlease provide:\n");
@@ -102,31 +133,8 @@ public class OpenAIService {
                           "4. Potential red flags for fake profiles\n" +
                           "5. Overall credibility assessment";
             
-            Map<String, Object> requestBody = Map.of(
-                "model", model,
-                "messages", Map.of("role", "user", "content", prompt),
-                "max_tokens", maxTokens,
-                "temperature", temperature
-            );
-            
-            Map<String, Object> response = webClient.post()
-                    .uri("/chat/completions")
-                    .bodyValue(requestBody)
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .block();
-            
-            if (response != null && response.containsKey("choices")) {
-                @SuppressWarnings("unchecked")
-                java.util.List<Map<String, Object>> choices = (java.util.List<Map<String, Object>>) response.get("choices");
-                if (!choices.isEmpty()) {
-                    Map<String, Object> choice = choices.get(0);
-                    Map<String, Object> message = (Map<String, Object>) choice.get("message");
-                    return (String) message.get("content");
-                }
-            }
-            
-            return "Unable to generate social media analysis";
+            String content = complete(prompt).block();
+            return content != null ? content : "Unable to generate social media analysis";
             
         } catch (Exception e) {
             return "Social media analysis failed: " + e.getMessage();
@@ -0,0 +1,208 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+// Multi-index hashing over 64-bit perceptual hashes: the hash is split into four 16-bit chunks and,
+// by pigeonhole, any entry within distance r shares at least one chunk within r / 4 bits. Entries are
+// kept in primitive arrays so millions of them cost a few tens of MB and no per-entry objects.
+@Service
+public class PerceptualHashIndex {
+    
+    private static final Logger logger = LoggerFactory.getLogger(PerceptualHashIndex.class);
+    
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 16;
+    private static final int BUCKETS = 1 << CHUNK_BITS;
+    
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+    
+    @Autowired
+    private AnalysisResultRepository analysisResultRepository;
+    
+    @Value("${analysis.phash.enabled}")
+    private boolean enabled;
+    
+    @Value("${analysis.phash.load-batch-size}")
+    private int loadBatchSize;
+    
+    @Value("${analysis.phash.refresh-overlap}")
+    private Duration refreshOverlap;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    // A lock rather than synchronized, the refresh does database I/O and must not pin a virtual thread
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    
+    private long[] hashes = new long[1024];
+    private long[] ids = new long[1024];
+    private int size;
+    
+    private final int[][][] postings = new int[CHUNKS][BUCKETS][];
+    private final int[][] postingSizes = new int[CHUNKS][BUCKETS];
+    
+    // Ids indexed within the overlap window, which every refresh reads again
+    private final Map<Long, LocalDateTime> recent = new ConcurrentHashMap<>();
+    
+    private volatile LocalDateTime lastLoadedAt = BEGINNING;
+    
+    @Async("analysisExecutor")
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (enabled) {
+            refresh();
+            logger.info("Perceptual hash index loaded with {} entries", size());
+        }
+    }
+    
+    // Picks up results written by other instances. A row can commit after newer ones, so each refresh
+    // starts refreshOverlap before the newest row seen and skips the ids it already has.
+    @Scheduled(fixedDelayString = "${analysis.phash.refresh-interval-ms}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        refreshLock.lock();
+        try {
+            LocalDateTime cursorAt = lastLoadedAt.minus(refreshOverlap);
+            long cursorId = Long.MIN_VALUE;
+            List<Object[]> rows;
+            do {
+                rows = analysisResultRepository.findPerceptualHashesAfter(cursorAt, cursorId, PageRequest.of(0, loadBatchSize));
+                for (Object[] row : rows) {
+                    long id = (Long) row[0];
+                    LocalDateTime createdAt = (LocalDateTime) row[2];
+                    if (recent.putIfAbsent(id, createdAt) == null) {
+                        insert(id, (Long) row[1]);
+                    }
+                    cursorAt = createdAt;
+                    cursorId = id;
+                    if (createdAt.isAfter(lastLoadedAt)) {
+                        lastLoadedAt = createdAt;
+                    }
+                }
+                // Per page, so the initial load does not remember every id it has seen
+                LocalDateTime horizon = lastLoadedAt.minus(refreshOverlap);
+                recent.values().removeIf(createdAt -> createdAt.isBefore(horizon));
+            } while (rows.size() == loadBatchSize);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to refresh perceptual hash index: {}", e.getMessage());
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+    
+    public void add(long id, long hash) {
+        if (!enabled) {
+            return;
+        }
+        if (recent.putIfAbsent(id, LocalDateTime.now()) == null) {
+            insert(id, hash);
+        }
+    }
+    
+    // Returns the id of the closest entry within maxDistance, or -1 if there is none
+    public long findNearest(long hash, int maxDistance) {
+        lock.readLock().lock();
+        try {
+            int chunkRadius = maxDistance / CHUNKS;
+            long[] best = {-1, maxDistance + 1};
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                int finalChunk = chunk;
+                visitNeighbours(chunkOf(hash, chunk), chunkRadius, 0, bucket -> {
+                    int[] entries = postings[finalChunk][bucket];
+                    int count = postingSizes[finalChunk][bucket];
+                    for (int i = 0; i < count; i++) {
+                        int distance = Long.bitCount(hashes[entries[i]] ^ hash);
+                        if (distance < best[1]) {
+                            best[0] = ids[entries[i]];
+                            best[1] = distance;
+                        }
+                    }
+                });
+                if (best[1] == 0) {
+                    break;
+                }
+            }
+            return best[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void insert(long id, long hash) {
+        lock.writeLock().lock();
+        try {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int position = size++;
+            hashes[position] = hash;
+            ids[position] = id;
+            
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                int bucket = chunkOf(hash, chunk);
+                int[] entries = postings[chunk][bucket];
+                int count = postingSizes[chunk][bucket];
+                if (entries == null) {
+                    entries = new int[2];
+                } else if (count == entries.length) {
+                    entries = Arrays.copyOf(entries, count * 2);
+                }
+                entries[count] = position;
+                postings[chunk][bucket] = entries;
+                postingSizes[chunk][bucket] = count + 1;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private static int chunkOf(long hash, int chunk) {
+        return (int) (hash >>> (chunk * CHUNK_BITS)) & (BUCKETS - 1);
+    }
+    
+    // Calls the visitor for every bucket within radius bits of key, flipping bits from startBit upwards
+    private static void visitNeighbours(int key, int radius, int startBit, IntConsumer visitor) {
+        if (startBit == 0) {
+            visitor.accept(key);
+        }
+        if (radius == 0) {
+            return;
+        }
+        for (int bit = startBit; bit < CHUNK_BITS; bit++) {
+            int flipped = key ^ (1 << bit);
+            visitor.accept(flipped);
+            visitNeighbours(flipped, radius - 1, bit + 1, visitor);
+        }
+    }
+}
\ No newline at end of file
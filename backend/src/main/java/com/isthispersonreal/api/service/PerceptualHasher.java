@@ -0,0 +1,74 @@
+package com.isthispersonreal.api.service;
+
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+// 64-bit difference hash (dHash): survives resizing, recompression and metadata stripping
+@Service
+public class PerceptualHasher {
+    
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+    
+    // Decode at roughly this many pixels on the short side, enough detail for a 9x8 hash
+    private static final int SAMPLE_SIZE = 64;
+    
+    public Long compute(Path image) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(image.toFile())) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / SAMPLE_SIZE);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return dHash(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+    
+    private long dHash(BufferedImage source) {
+        BufferedImage gray = new BufferedImage(HASH_WIDTH, HASH_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = gray.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, 0, 0, HASH_WIDTH, HASH_HEIGHT, null);
+        } finally {
+            graphics.dispose();
+        }
+        
+        byte[] pixels = new byte[HASH_WIDTH * HASH_HEIGHT];
+        gray.getRaster().getDataElements(0, 0, HASH_WIDTH, HASH_HEIGHT, pixels);
+        
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = pixels[y * HASH_WIDTH + x] & 0xff;
+                int right = pixels[y * HASH_WIDTH + x + 1] & 0xff;
+                hash = (hash << 1) | (left > right ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+}
\ No newline at end of file
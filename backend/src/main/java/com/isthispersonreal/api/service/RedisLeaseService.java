@@ -0,0 +1,93 @@
+package com.isthispersonreal.api.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+@Service
+public class RedisLeaseService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RedisLeaseService.class);
+    
+    // Only the holder may release or extend a lease, so a slow owner cannot drop someone else's
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+    
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    
+    public Lease tryAcquire(String key, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(key, token, ttl);
+            return Boolean.TRUE.equals(acquired) ? new Lease(key, token, true) : null;
+        } catch (RuntimeException e) {
+            // Without Redis we fall back to local coordination and the database constraints
+            logger.debug("Redis lease unavailable for {}: {}", key, e.getMessage());
+            return new Lease(key, token, false);
+        }
+    }
+    
+    public boolean renew(Lease lease, Duration ttl) {
+        if (!lease.isDistributed()) {
+            return true;
+        }
+        try {
+            Long renewed = redisTemplate.execute(RENEW_SCRIPT, List.of(lease.getKey()),
+                    lease.getToken(), String.valueOf(ttl.toMillis()));
+            return renewed != null && renewed > 0;
+        } catch (RuntimeException e) {
+            logger.debug("Failed to renew lease {}: {}", lease.getKey(), e.getMessage());
+            return false;
+        }
+    }
+    
+    public void release(Lease lease) {
+        if (lease == null || !lease.isDistributed()) {
+            return;
+        }
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(lease.getKey()), lease.getToken());
+        } catch (RuntimeException e) {
+            logger.debug("Failed to release lease {}: {}", lease.getKey(), e.getMessage());
+        }
+    }
+    
+    public static class Lease {
+        
+        private final String key;
+        private final String token;
+        private final boolean distributed;
+        
+        private Lease(String key, String token, boolean distributed) {
+            this.key = key;
+            this.token = token;
+            this.distributed = distributed;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        public String getToken() {
+            return token;
+        }
+        
+        public boolean isDistributed() {
+            return distributed;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.model.UserAnalysisStats;
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import com.isthispersonreal.api.repository.UserAnalysisStatsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Service
+public class UserAnalysisStatsService {
+    
+    @Autowired
+    private AnalysisResultRepository analysisResultRepository;
+    
+    @Autowired
+    private UserAnalysisStatsRepository userAnalysisStatsRepository;
+    
+    // Inserts the result and folds it into its owner's rollup atomically, the rollup never disagrees with the table
+    @Transactional
+    public AnalysisResult saveResult(AnalysisResult result) {
+        AnalysisResult saved = analysisResultRepository.save(result);
+        if (saved.getUser() != null) {
+            AnalysisResult.DetectionLabel label = saved.getDetectionLabel();
+            userAnalysisStatsRepository.recordAnalysis(saved.getUser().getId(), 1,
+                    saved.getConfidenceScore() != null ? saved.getConfidenceScore() : 0.0,
+                    label == AnalysisResult.DetectionLabel.REAL ? 1 : 0,
+                    label == AnalysisResult.DetectionLabel.AI_GENERATED ? 1 : 0,
+                    label == AnalysisResult.DetectionLabel.UNCERTAIN ? 1 : 0,
+                    saved.getCreatedAt());
+        }
+        return saved;
+    }
+    
+    // Same for a group of results: one transaction, and one rollup update per user instead of per result
+    @Transactional
+    public List<AnalysisResult> saveResults(List<AnalysisResult> results) {
+        List<AnalysisResult> saved = analysisResultRepository.saveAll(results);
+        
+        Map<Long, Rollup> rollups = new HashMap<>();
+        for (AnalysisResult result : saved) {
+            if (result.getUser() != null) {
+                rollups.computeIfAbsent(result.getUser().getId(), id -> new Rollup()).add(result);
+            }
+        }
+        rollups.forEach((userId, rollup) -> userAnalysisStatsRepository.recordAnalysis(userId, rollup.count,
+                rollup.confidence, rollup.real, rollup.aiGenerated, rollup.uncertain, rollup.lastAnalysisAt));
+        return saved;
+    }
+    
+    public Optional<UserAnalysisStats> findByUserId(Long userId) {
+        return userAnalysisStatsRepository.findById(userId);
+    }
+    
+    private static class Rollup {
+        
+        private int count;
+        private double confidence;
+        private int real;
+        private int aiGenerated;
+        private int uncertain;
+        private LocalDateTime lastAnalysisAt;
+        
+        private void add(AnalysisResult result) {
+            count++;
+            confidence += result.getConfidenceScore() != null ? result.getConfidenceScore() : 0.0;
+            switch (result.getDetectionLabel()) {
+                case REAL:
+                    real++;
+                    break;
+                case AI_GENERATED:
+                    aiGenerated++;
+                    break;
+                default:
+                    uncertain++;
+            }
+            if (lastAnalysisAt == null || result.getCreatedAt().isAfter(lastAnalysisAt)) {
+                lastAnalysisAt = result.getCreatedAt();
+            }
+        }
+    }
+}
\ No newline at end of file
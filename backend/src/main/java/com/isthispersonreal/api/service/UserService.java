@@ -2,6 +2,7 @@ package com.isthispersonreal.api.service;
 
 import com.isthispersonreal.api.model.User;
 import com.isthispersonreal.api.repository.UserRepository;
+import com.isthispersonreal.api.security.AuthenticationCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -22,6 +23,9 @@ public class UserService implements UserDetailsService {
     @Autowired
     private PasswordEncoder passwordEncoder;
     
+    @Autowired
+    private AuthenticationCache authenticationCache;
+    
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         // Loads a user by their username for authentication
@@ -103,13 +107,30 @@ public class UserService implements UserDetailsService {
         if (userOpt.isPresent()) {
             User user = userOpt.get();
             user.setRole(newRole);
-            return userRepository.save(user);
+            User saved = userRepository.save(user);
+            authenticationCache.invalidateUser(saved.getUsername());
+            return saved;
+        }
+        throw new RuntimeException("User not found");
+    }
+    
+    public User setUserEnabled(Long userId, boolean enabled) {
+        // Enables or disables a user, a disabled user's outstanding tokens stop working
+        Optional<User> userOpt = userRepository.findById(userId);
+        if (userOpt.isPresent()) {
+            User user = userOpt.get();
+            user.setEnabled(enabled);
+            User saved = userRepository.save(user);
+            authenticationCache.invalidateUser(saved.getUsername());
+            return saved;
         }
         throw new RuntimeException("User not found");
     }
     
     public void deleteUser(Long userId) {
         // Deletes a user by ID
+        Optional<User> user = userRepository.findById(userId);
         userRepository.deleteById(userId);
+        user.ifPresent(deleted -> authenticationCache.invalidateUser(deleted.getUsername()));
     }
 } 
\ No newline at end of file
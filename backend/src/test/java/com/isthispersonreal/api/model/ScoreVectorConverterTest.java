@@ -0,0 +1,116 @@
+package com.isthispersonreal.api.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScoreVectorConverterTest {
+
+    @Test
+    void dictionaryKeysTakeOneByte() {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        scores.put("REAL", 0.93);
+        scores.put("AI_GENERATED", 0.07);
+
+        byte[] encoded = ScoreVectorConverter.encode(scores);
+
+        // Version, count, then an id byte and a float per score
+        assertEquals(2 + 2 * 5, encoded.length);
+        assertArrayEquals(new byte[]{1, 2, 0}, Arrays.copyOf(encoded, 3));
+        assertEquals(scores, ScoreVectorConverter.decode(encoded));
+    }
+
+    @Test
+    void unknownKeysAreStoredInline() {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        scores.put("REAL", 0.5);
+        scores.put("deepfake_swap", 0.25);
+        scores.put("GAN_ARTIFACTS", 0.125);
+
+        Map<String, Double> decoded = ScoreVectorConverter.decode(ScoreVectorConverter.encode(scores));
+
+        assertEquals(scores, decoded);
+        assertEquals(List.copyOf(scores.keySet()), List.copyOf(decoded.keySet()));
+    }
+
+    @Test
+    void missingValuesSurviveAsNull() {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        scores.put("REAL", null);
+        scores.put("AI_GENERATED", Double.NaN);
+
+        Map<String, Double> decoded = ScoreVectorConverter.decode(ScoreVectorConverter.encode(scores));
+
+        assertEquals(2, decoded.size());
+        assertNull(decoded.get("REAL"));
+        assertNull(decoded.get("AI_GENERATED"));
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void integerValuesFromJsonAreWidened() {
+        Map scores = new LinkedHashMap<>();
+        scores.put("REAL", 1);
+
+        assertEquals(Map.of("REAL", 1.0), ScoreVectorConverter.decode(ScoreVectorConverter.encode(scores)));
+    }
+
+    @Test
+    void nullMapStaysNull() {
+        assertNull(ScoreVectorConverter.encode(null));
+        assertNull(ScoreVectorConverter.decode(null));
+    }
+
+    @Test
+    void holdsUpTo255Scores() {
+        Map<String, Double> scores = scores(255);
+
+        assertEquals(scores, ScoreVectorConverter.decode(ScoreVectorConverter.encode(scores)));
+    }
+
+    @Test
+    void rejectsMoreThan255Scores() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> ScoreVectorConverter.encode(scores(256)));
+
+        assertEquals("A score vector holds at most 255 scores, got 256", e.getMessage());
+    }
+
+    @Test
+    void rejectsAnUnknownVersion() {
+        byte[] encoded = ScoreVectorConverter.encode(Map.of("REAL", 0.5));
+        encoded[0] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> ScoreVectorConverter.decode(encoded));
+    }
+
+    @Test
+    void rejectsTruncatedInput() {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        scores.put("REAL", 0.5);
+        scores.put("deepfake_swap", 0.25);
+        byte[] encoded = ScoreVectorConverter.encode(scores);
+
+        for (int length = 1; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThrows(UncheckedIOException.class, () -> ScoreVectorConverter.decode(truncated), "length " + length);
+        }
+    }
+
+    private static Map<String, Double> scores(int count) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            scores.put("score_" + i, i / 256.0);
+        }
+        return scores;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+package com.isthispersonreal.api.queue;
+
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.repository.AnalysisQueueRepository;
+import com.isthispersonreal.api.service.AnalysisStatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Two workers sharing one queue table. The table is a map that answers the repository's conditional
+// UPDATEs the way their WHERE clauses read, so lease hand-overs can be played out step by step.
+class AnalysisQueueServiceTest {
+
+    private static final Duration LEASE = Duration.ofMillis(100);
+
+    private final Map<Long, Row> table = new ConcurrentHashMap<>();
+
+    private AnalysisQueueService workerA;
+    private AnalysisQueueService workerB;
+
+    @BeforeEach
+    void setUp() {
+        AnalysisQueueRepository repository = fakeRepository();
+        AnalysisStatsService stats = mock(AnalysisStatsService.class);
+        workerA = worker(repository, stats);
+        workerB = worker(repository, stats);
+        table.put(1L, new Row());
+    }
+
+    @Test
+    void claimTakesPendingJobsUnderALease() {
+        List<AnalysisQueue> claimed = workerA.claimJobs(10);
+
+        assertEquals(1, claimed.size());
+        AnalysisQueue job = claimed.get(0);
+        assertEquals(AnalysisQueue.QueueStatus.PROCESSING, job.getStatus());
+        assertEquals(owner(workerA), job.getLeaseOwner());
+        assertEquals(owner(workerA), table.get(1L).owner);
+        assertTrue(table.get(1L).leaseExpiresAt.isAfter(LocalDateTime.now()));
+
+        // Nothing is left for the other worker
+        assertTrue(workerB.claimJobs(10).isEmpty());
+    }
+
+    @Test
+    void onlyTheOwnerRenewsTheLease() throws Exception {
+        workerA.claimJobs(10);
+        LocalDateTime claimedLease = table.get(1L).leaseExpiresAt;
+        Thread.sleep(20);
+
+        assertEquals(0, workerB.renewLeases(List.of(1L)));
+        assertEquals(claimedLease, table.get(1L).leaseExpiresAt);
+
+        assertEquals(1, workerA.renewLeases(List.of(1L)));
+        assertTrue(table.get(1L).leaseExpiresAt.isAfter(claimedLease));
+    }
+
+    @Test
+    void renewedLeaseIsNotReclaimed() throws Exception {
+        workerA.claimJobs(10);
+        Thread.sleep(LEASE.toMillis() / 2);
+        workerA.renewLeases(List.of(1L));
+        Thread.sleep(LEASE.toMillis() / 2 + 20);
+
+        assertTrue(workerB.findExpiredLeases(10).isEmpty());
+    }
+
+    @Test
+    void expiredLeaseIsRequeuedWithARetryUsedUp() throws Exception {
+        workerA.claimJobs(10);
+        Thread.sleep(LEASE.toMillis() + 20);
+
+        List<AnalysisQueue> expired = workerB.findExpiredLeases(10);
+        assertEquals(1, expired.size());
+        assertEquals(AnalysisQueue.QueueStatus.PENDING, workerB.reclaimExpired(expired.get(0)));
+
+        Row row = table.get(1L);
+        assertEquals(AnalysisQueue.QueueStatus.PENDING, row.status);
+        assertNull(row.owner);
+        assertEquals(1, row.retryCount);
+        // A second reaper that read the same expired row loses
+        assertNull(workerA.reclaimExpired(expired.get(0)));
+    }
+
+    @Test
+    void expiredLeaseOnTheLastAttemptIsDeadLettered() throws Exception {
+        table.get(1L).retryCount = 2;
+        workerA.claimJobs(10);
+        Thread.sleep(LEASE.toMillis() + 20);
+
+        AnalysisQueue job = workerB.findExpiredLeases(10).get(0);
+
+        assertEquals(AnalysisQueue.QueueStatus.FAILED, workerB.reclaimExpired(job));
+        assertEquals(AnalysisQueue.QueueStatus.FAILED, table.get(1L).status);
+    }
+
+    @Test
+    void staleOwnerCannotComplete() throws Exception {
+        AnalysisQueue staleCopy = workerA.claimJobs(10).get(0);
+        Thread.sleep(LEASE.toMillis() + 20);
+        workerB.reclaimExpired(workerB.findExpiredLeases(10).get(0));
+        table.get(1L).scheduledAt = LocalDateTime.now();
+        AnalysisQueue current = workerB.claimJobs(10).get(0);
+
+        AtomicInteger writes = new AtomicInteger();
+        assertEquals(Optional.empty(), workerA.complete(staleCopy, writes::incrementAndGet));
+        assertFalse(workerA.markCompleted(staleCopy));
+        assertEquals(0, writes.get(), "the stale owner's writes must not run");
+        assertEquals(AnalysisQueue.QueueStatus.PROCESSING, table.get(1L).status);
+        assertEquals(owner(workerB), table.get(1L).owner);
+
+        assertEquals(Optional.of(1), workerB.complete(current, writes::incrementAndGet));
+        assertEquals(AnalysisQueue.QueueStatus.COMPLETED, table.get(1L).status);
+        // Completed once, a repeat is refused as well
+        assertFalse(workerB.markCompleted(current));
+    }
+
+    private static AnalysisQueueService worker(AnalysisQueueRepository repository, AnalysisStatsService stats) {
+        AnalysisQueueService service = new AnalysisQueueService();
+        ReflectionTestUtils.setField(service, "analysisQueueRepository", repository);
+        ReflectionTestUtils.setField(service, "analysisStatsService", stats);
+        ReflectionTestUtils.setField(service, "retryBackoffMs", 60_000L);
+        ReflectionTestUtils.setField(service, "maxBackoffMs", 60_000L);
+        ReflectionTestUtils.setField(service, "leaseDuration", LEASE);
+        return service;
+    }
+
+    private static String owner(AnalysisQueueService worker) {
+        return (String) ReflectionTestUtils.getField(worker, "workerId");
+    }
+
+    private AnalysisQueueRepository fakeRepository() {
+        AnalysisQueueRepository repository = mock(AnalysisQueueRepository.class);
+        when(repository.findPendingJobs(any(), any())).thenAnswer(invocation -> {
+            LocalDateTime now = invocation.getArgument(0);
+            return table.entrySet().stream()
+                    .filter(entry -> entry.getValue().status == AnalysisQueue.QueueStatus.PENDING
+                            && !entry.getValue().scheduledAt.isAfter(now))
+                    .map(entry -> entry.getValue().toJob(entry.getKey()))
+                    .toList();
+        });
+        when(repository.claim(anyCollection(), anyString(), any(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            int updated = 0;
+            for (Long id : ids) {
+                Row row = table.get(id);
+                if (row.status == AnalysisQueue.QueueStatus.PENDING) {
+                    row.status = AnalysisQueue.QueueStatus.PROCESSING;
+                    row.owner = invocation.getArgument(1);
+                    row.leaseExpiresAt = invocation.getArgument(2);
+                    updated++;
+                }
+            }
+            return updated;
+        });
+        when(repository.renewLeases(anyCollection(), anyString(), any())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            int updated = 0;
+            for (Long id : ids) {
+                Row row = table.get(id);
+                if (row.status == AnalysisQueue.QueueStatus.PROCESSING && row.owner.equals(invocation.getArgument(1))) {
+                    row.leaseExpiresAt = invocation.getArgument(2);
+                    updated++;
+                }
+            }
+            return updated;
+        });
+        when(repository.findExpiredLeases(any(), any(), any())).thenAnswer(invocation -> {
+            LocalDateTime now = invocation.getArgument(0);
+            return table.entrySet().stream()
+                    .filter(entry -> entry.getValue().isExpired(now))
+                    .map(entry -> entry.getValue().toJob(entry.getKey()))
+                    .toList();
+        });
+        when(repository.requeueExpired(anyLong(), anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            Row row = table.get(invocation.<Long>getArgument(0));
+            if (!row.isExpired(invocation.getArgument(3))) {
+                return 0;
+            }
+            row.retryCount++;
+            row.status = AnalysisQueue.QueueStatus.PENDING;
+            row.scheduledAt = invocation.getArgument(2);
+            row.owner = null;
+            row.leaseExpiresAt = null;
+            return 1;
+        });
+        when(repository.deadLetterExpired(anyLong(), anyString(), any(), any())).thenAnswer(invocation -> {
+            Row row = table.get(invocation.<Long>getArgument(0));
+            if (!row.isExpired(invocation.getArgument(2))) {
+                return 0;
+            }
+            row.retryCount++;
+            row.status = AnalysisQueue.QueueStatus.FAILED;
+            row.owner = null;
+            row.leaseExpiresAt = null;
+            return 1;
+        });
+        when(repository.markCompleted(anyLong(), any(), anyString(), any())).thenAnswer(invocation -> {
+            Row row = table.get(invocation.<Long>getArgument(0));
+            if (row.status != invocation.getArgument(1) || !invocation.getArgument(2).equals(row.owner)) {
+                return 0;
+            }
+            row.status = AnalysisQueue.QueueStatus.COMPLETED;
+            row.owner = null;
+            row.leaseExpiresAt = null;
+            return 1;
+        });
+        return repository;
+    }
+
+    private static class Row {
+
+        private AnalysisQueue.QueueStatus status = AnalysisQueue.QueueStatus.PENDING;
+        private String owner;
+        private LocalDateTime leaseExpiresAt;
+        private LocalDateTime scheduledAt = LocalDateTime.now().minusSeconds(1);
+        private int retryCount;
+
+        private boolean isExpired(LocalDateTime now) {
+            return status == AnalysisQueue.QueueStatus.PROCESSING && leaseExpiresAt.isBefore(now);
+        }
+
+        private AnalysisQueue toJob(Long id) {
+            AnalysisQueue job = new AnalysisQueue(null, "hash-" + id, "image.jpg", 1024L, "image/jpeg");
+            job.setId(id);
+            job.setStatus(status);
+            job.setRetryCount(retryCount);
+            job.setLeaseOwner(owner);
+            job.setLeaseExpiresAt(leaseExpiresAt);
+            return job;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.isthispersonreal.api.repository;
+
+import com.isthispersonreal.api.config.IdGeneratorSeeder;
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.model.User;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Stores 10k analysis results with AUTO_INCREMENT ids and no batching, then upgrades the same schema to
+// pooled ids with JDBC batching and stores 10k more. In-memory H2 by default, which has no network round
+// trips and so understates the gain; point it at a scratch MySQL database (its tables are dropped) with
+// -Dbenchmark.jdbc.url=jdbc:mysql://...?rewriteBatchedStatements=true -Dbenchmark.jdbc.username=...
+// -Dbenchmark.jdbc.password=... Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+class InsertBatchingBenchmarkTest {
+
+    private static final int RESULTS = 10_000;
+    private static final int USERS = 10;
+
+    // Results stored per transaction, as a busy ingest commits them
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String URL = System.getProperty("benchmark.jdbc.url", "jdbc:h2:mem:insert-benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+    private static final String USERNAME = System.getProperty("benchmark.jdbc.username", "sa");
+    private static final String PASSWORD = System.getProperty("benchmark.jdbc.password", "");
+
+    @Test
+    void compareIdentityAndBatchedInserts() {
+        Map<String, String> before = new LinkedHashMap<>();
+        before.put("hibernate.hbm2ddl.auto", "create");
+        Configuration identity = configuration(before).addResource("identity-ids-orm.xml");
+        Run identityRun;
+        try (SessionFactory sessionFactory = identity.buildSessionFactory()) {
+            identityRun = ingest(sessionFactory, "identity");
+        }
+
+        Map<String, String> after = new LinkedHashMap<>();
+        after.put("hibernate.hbm2ddl.auto", "update");
+        after.put("hibernate.jdbc.batch_size", "50");
+        after.put("hibernate.order_inserts", "true");
+        after.put("hibernate.order_updates", "true");
+        Run batchedRun;
+        try (SessionFactory sessionFactory = configuration(after).buildSessionFactory()) {
+            // The upgrade path: generator rows must start past the rows stored with AUTO_INCREMENT
+            IdGeneratorSeeder seeder = new IdGeneratorSeeder();
+            ReflectionTestUtils.setField(seeder, "jdbcTemplate", new JdbcTemplate(new DriverManagerDataSource(URL, USERNAME, PASSWORD)));
+            seeder.seed();
+            batchedRun = ingest(sessionFactory, "batched");
+
+            Long stored = sessionFactory.fromTransaction(session -> session
+                    .createNativeQuery("SELECT COUNT(*) FROM analysis_results", Long.class)
+                    .getSingleResult());
+            assertEquals(2L * RESULTS, stored);
+        }
+
+        System.out.printf("identity, unbatched: %d results in %d ms (%.0f inserts/s), %d prepared statements%n",
+                RESULTS, identityRun.millis, RESULTS * 1000.0 / identityRun.millis, identityRun.statements);
+        System.out.printf("pooled ids, batched: %d results in %d ms (%.0f inserts/s), %d prepared statements%n",
+                RESULTS, batchedRun.millis, RESULTS * 1000.0 / batchedRun.millis, batchedRun.statements);
+    }
+
+    private Configuration configuration(Map<String, String> properties) {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(User.class)
+                .addAnnotatedClass(AnalysisResult.class)
+                .addAnnotatedClass(AnalysisQueue.class)
+                .setProperty("hibernate.connection.url", URL)
+                .setProperty("hibernate.connection.username", USERNAME)
+                .setProperty("hibernate.connection.password", PASSWORD)
+                .setProperty("hibernate.generate_statistics", "true");
+        properties.forEach(configuration::setProperty);
+        return configuration;
+    }
+
+    private Run ingest(SessionFactory sessionFactory, String prefix) {
+        List<User> users = new ArrayList<>();
+        sessionFactory.inTransaction(session -> {
+            for (int i = 0; i < USERS; i++) {
+                User user = new User(prefix + "-user-" + i, prefix + "-user-" + i + "@example.com", "password", User.Role.USER);
+                session.persist(user);
+                users.add(user);
+            }
+        });
+
+        // Warm up the statement paths and the id generator outside the measurement
+        store(sessionFactory, users, prefix + "-warmup", 0, CHUNK_SIZE);
+        sessionFactory.inTransaction(session -> session
+                .createNativeMutationQuery("DELETE FROM analysis_results WHERE image_hash LIKE :prefix")
+                .setParameter("prefix", prefix + "-warmup%")
+                .executeUpdate());
+
+        sessionFactory.getStatistics().clear();
+        long start = System.nanoTime();
+        for (int offset = 0; offset < RESULTS; offset += CHUNK_SIZE) {
+            store(sessionFactory, users, prefix, offset, Math.min(CHUNK_SIZE, RESULTS - offset));
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        return new Run(millis, sessionFactory.getStatistics().getPrepareStatementCount());
+    }
+
+    private void store(SessionFactory sessionFactory, List<User> users, String prefix, int offset, int count) {
+        sessionFactory.inTransaction(session -> {
+            for (int i = offset; i < offset + count; i++) {
+                AnalysisResult result = new AnalysisResult(session.getReference(User.class, users.get(i % USERS).getId()),
+                        prefix + "-" + i, "image-" + i + ".jpg", AnalysisResult.DetectionLabel.REAL, 0.93);
+                result.setFileSize(204_800L);
+                result.setMimeType("image/jpeg");
+                result.setScores(Map.of("REAL", 0.93, "AI_GENERATED", 0.07));
+                result.setProcessingTimeMs(120L);
+                result.setMlModelVersion("benchmark");
+                session.persist(result);
+            }
+        });
+    }
+
+    private static class Run {
+
+        private final long millis;
+        private final long statements;
+
+        private Run(long millis, long statements) {
+            this.millis = millis;
+            this.statements = statements;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,82 @@
+package com.isthispersonreal.api.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+
+    private static final long RTT = 10_000_000L;
+
+    @Test
+    void rejectsOnceTheLimitIsInFlight() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 10, 100);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.onIgnored();
+        assertEquals(1, limiter.getInFlight());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void growsWhileLatencyStaysAtTheBaseline() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 1, 50, 1000);
+
+        for (int i = 0; i < 5; i++) {
+            complete(limiter, RTT);
+        }
+
+        assertEquals(15, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void shrinksWhenLatencyShowsQueueing() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(20, 1, 50, 1000);
+        complete(limiter, RTT);
+        int baseline = limiter.getLimit();
+
+        // Calls taking four times the baseline mean most of ours are waiting downstream
+        for (int i = 0; i < 5; i++) {
+            complete(limiter, 4 * RTT);
+        }
+
+        assertTrue(limiter.getLimit() < baseline, "limit " + limiter.getLimit() + " not below " + baseline);
+    }
+
+    @Test
+    void backsOffOnFailures() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(20, 5, 50, 1000);
+
+        assertTrue(limiter.tryAcquire());
+        limiter.onDropped();
+        assertEquals(18, limiter.getLimit());
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onDropped();
+        }
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void neverGrowsPastTheMaximum() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 1, 12, 1000);
+
+        for (int i = 0; i < 20; i++) {
+            complete(limiter, RTT);
+        }
+
+        assertEquals(12, limiter.getLimit());
+    }
+
+    private static void complete(AdaptiveLimiter limiter, long rttNanos) {
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess(rttNanos);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.isthispersonreal.api.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final Duration OPEN_DURATION = Duration.ofMillis(50);
+
+    @Test
+    void staysClosedBelowTheMinimumNumberOfCalls() {
+        CircuitBreaker breaker = breaker();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensWhenTheFailureRateCrossesTheThreshold() {
+        CircuitBreaker breaker = breaker();
+
+        record(breaker, false, false, true, true);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertFalse(breaker.getRemainingOpen().isZero());
+    }
+
+    @Test
+    void oldOutcomesLeaveTheWindow() {
+        CircuitBreaker breaker = breaker();
+
+        record(breaker, true, false, false, false, false, false, false, false);
+        // The early failure has been pushed out, three of eight is still under half
+        record(breaker, true, true, true);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void letsTrialCallsThroughOnceTheOpenPeriodIsOver() throws Exception {
+        CircuitBreaker breaker = openBreaker();
+
+        Thread.sleep(OPEN_DURATION.toMillis() * 2);
+
+        assertTrue(breaker.getRemainingOpen().isZero());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire(), "only two trial calls are allowed");
+    }
+
+    @Test
+    void closesAfterSuccessfulTrials() throws Exception {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_DURATION.toMillis() * 2);
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess();
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // The window starts over, a single failure does not reopen it
+        record(breaker, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void reopensWhenATrialFails() throws Exception {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_DURATION.toMillis() * 2);
+
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void cancelledTrialFreesItsSlot() throws Exception {
+        CircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_DURATION.toMillis() * 2);
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onIgnored();
+
+        assertTrue(breaker.tryAcquire());
+    }
+
+    private static CircuitBreaker breaker() {
+        return new CircuitBreaker(8, 4, 0.5, OPEN_DURATION, 2);
+    }
+
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = breaker();
+        record(breaker, true, true, true, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private static void record(CircuitBreaker breaker, boolean... failures) {
+        for (boolean failed : failures) {
+            assertTrue(breaker.tryAcquire());
+            if (failed) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+    }
+}
\ No newline at end of file
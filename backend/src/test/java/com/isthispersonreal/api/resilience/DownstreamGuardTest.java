@@ -0,0 +1,36 @@
+package com.isthispersonreal.api.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DownstreamGuardTest {
+
+    @Test
+    void checkAvailableRecoversAfterTheOpenPeriod() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(4, 2, 0.5, Duration.ofMillis(50), 1);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        DownstreamGuard guard = new DownstreamGuard("ml-service", breaker, new AdaptiveLimiter(4, 1, 8, 100),
+                registry.counter("circuit"), registry.counter("limit"));
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(IllegalStateException.class,
+                    () -> guard.protect(() -> Mono.error(new IllegalStateException("down"))).block());
+        }
+        assertThrows(DownstreamUnavailableException.class, guard::checkAvailable);
+
+        Thread.sleep(100);
+
+        // Nothing has called tryAcquire yet, the breaker still reports OPEN
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertDoesNotThrow(guard::checkAvailable);
+        assertEquals("ok", guard.protect(() -> Mono.just("ok")).block());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,83 @@
+package com.isthispersonreal.api.resilience;
+
+import com.isthispersonreal.api.model.User;
+import com.isthispersonreal.api.repository.AnalysisQueueRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UploadRateLimiterTest {
+
+    private static final int PREFETCH = 3;
+
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    @Mock
+    private AnalysisQueueRepository analysisQueueRepository;
+
+    @InjectMocks
+    private UploadRateLimiter uploadRateLimiter;
+
+    private final User user = new User("alice", "alice@example.com", "password", User.Role.USER);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(uploadRateLimiter, "enabled", true);
+        ReflectionTestUtils.setField(uploadRateLimiter, "capacity", 10);
+        ReflectionTestUtils.setField(uploadRateLimiter, "refillPerMinute", 10.0);
+        ReflectionTestUtils.setField(uploadRateLimiter, "prefetch", PREFETCH);
+        ReflectionTestUtils.setField(uploadRateLimiter, "prefetchTtl", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(uploadRateLimiter, "userMaxInFlight", 5);
+        uploadRateLimiter.init();
+        user.setId(1L);
+    }
+
+    @Test
+    void uploadRejectedForInFlightJobsKeepsItsToken() {
+        when(analysisQueueRepository.countActiveByUserId(1L)).thenReturn(5L);
+
+        assertThrows(RateLimitExceededException.class, () -> uploadRateLimiter.acquire(user));
+
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    @Test
+    void concurrentPrefetchesAddUp() {
+        when(analysisQueueRepository.countActiveByUserId(1L)).thenReturn(0L);
+        // While this upload waits on Redis another one finds nothing banked, takes its own batch and banks the rest
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), anyString(), anyString(), anyString(), anyString()))
+                .thenAnswer(invocation -> {
+                    uploadRateLimiter.acquire(user);
+                    return List.of((long) PREFETCH, 0L);
+                })
+                .thenReturn(List.of((long) PREFETCH, 0L));
+
+        uploadRateLimiter.acquire(user);
+
+        // Both uploads banked PREFETCH - 1 tokens, all of them are spent without another round trip
+        for (int i = 0; i < 2 * (PREFETCH - 1); i++) {
+            uploadRateLimiter.acquire(user);
+        }
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), anyString(), anyString(), anyString(), anyString());
+    }
+}
\ No newline at end of file
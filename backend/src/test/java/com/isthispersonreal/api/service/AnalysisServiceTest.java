@@ -0,0 +1,152 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.queue.AnalysisQueueService;
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AnalysisServiceTest {
+
+    private static final String HASH = "a1b2c3";
+
+    @Mock
+    private AnalysisResultRepository analysisResultRepository;
+
+    @Mock
+    private AnalysisQueueService analysisQueueService;
+
+    @Mock
+    private ImageStorageService imageStorageService;
+
+    @Mock
+    private AnalysisResultCache analysisResultCache;
+
+    @Mock
+    private AnalysisCoalescer analysisCoalescer;
+
+    @Mock
+    private PerceptualHashIndex perceptualHashIndex;
+
+    @Mock
+    private AnalysisStatsService analysisStatsService;
+
+    @Mock
+    private UserAnalysisStatsService userAnalysisStatsService;
+
+    @Mock
+    private ExplanationService explanationService;
+
+    @Mock
+    private MlBatchDispatcher mlBatchDispatcher;
+
+    @InjectMocks
+    private AnalysisService analysisService;
+
+    private final AnalysisQueue job = new AnalysisQueue(null, HASH, "image.jpg", 1024L, "image/jpeg");
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(analysisService, "blockingScheduler", Schedulers.immediate());
+        ReflectionTestUtils.setField(analysisService, "mlServiceTimeout", 5000);
+        job.setId(7L);
+        job.setPerceptualHash(42L);
+    }
+
+    @Test
+    void workerThatLostItsLeaseLeavesNoTrace() {
+        analysisIsFresh();
+        when(analysisQueueService.complete(eq(job), any())).thenReturn(Optional.empty());
+
+        AnalysisResult result = analysisService.processJobAsync(job).block(Duration.ofSeconds(5));
+
+        assertNull(result);
+        verifyNoInteractions(userAnalysisStatsService, analysisStatsService, perceptualHashIndex, explanationService);
+        verify(analysisResultCache, never()).put(any());
+        verify(imageStorageService, never()).delete(any());
+        verify(analysisCoalescer, never()).complete(any());
+    }
+
+    @Test
+    void ownerStoresTheResultInsideTheCompletion() {
+        analysisIsFresh();
+        when(analysisQueueService.complete(eq(job), any())).thenAnswer(invocation ->
+                Optional.of(invocation.<Supplier<?>>getArgument(1).get()));
+        when(userAnalysisStatsService.saveResult(any())).thenAnswer(invocation -> {
+            AnalysisResult saved = invocation.getArgument(0);
+            saved.setId(99L);
+            return saved;
+        });
+
+        AnalysisResult result = analysisService.processJobAsync(job).block(Duration.ofSeconds(5));
+
+        assertEquals(99L, result.getId());
+        verify(analysisResultCache).put(result);
+        verify(perceptualHashIndex).add(99L, 42L);
+        verify(imageStorageService).delete(HASH);
+        verify(analysisCoalescer).complete(result);
+        verify(explanationService).requestExplanation(result);
+    }
+
+    @Test
+    void reclaimedJobKeepsItsImageWhenTheResultAlreadyExists() {
+        AnalysisResult existing = new AnalysisResult(null, HASH, "image.jpg", AnalysisResult.DetectionLabel.REAL, 0.9);
+        when(analysisResultCache.get(eq(HASH), any())).thenReturn(Optional.of(existing));
+        when(analysisQueueService.markCompleted(job)).thenReturn(false);
+
+        analysisService.processJobAsync(job).block(Duration.ofSeconds(5));
+
+        verify(imageStorageService, never()).delete(any());
+        verify(perceptualHashIndex, never()).add(anyLong(), anyLong());
+    }
+
+    @Test
+    void losingTheInsertRaceSettlesWithTheStoredRow() {
+        analysisIsFresh();
+        AnalysisResult winner = new AnalysisResult(null, HASH, "image.jpg", AnalysisResult.DetectionLabel.REAL, 0.9);
+        when(analysisQueueService.complete(eq(job), any())).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+        when(analysisResultRepository.findByImageHash(HASH)).thenReturn(Optional.of(winner));
+        when(analysisQueueService.markCompleted(job)).thenReturn(true);
+
+        AnalysisResult result = analysisService.processJobAsync(job).block(Duration.ofSeconds(5));
+
+        assertNull(result);
+        verify(imageStorageService).delete(HASH);
+        verify(analysisCoalescer).complete(winner);
+        verify(analysisQueueService, never()).markFailed(any(), any());
+        verifyNoInteractions(explanationService, perceptualHashIndex);
+    }
+
+    private void analysisIsFresh() {
+        when(analysisResultCache.get(eq(HASH), any())).thenReturn(Optional.empty());
+        when(imageStorageService.resolve(HASH)).thenReturn(Path.of("/tmp", HASH));
+        when(mlBatchDispatcher.submit(any())).thenReturn(CompletableFuture.completedFuture(
+                new MlVerdict("REAL", 0.9, Map.of("REAL", 0.9, "AI_GENERATED", 0.1), "test")));
+    }
+}
\ No newline at end of file
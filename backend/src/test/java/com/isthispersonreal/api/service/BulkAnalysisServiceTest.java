@@ -0,0 +1,234 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisQueue;
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.model.User;
+import com.isthispersonreal.api.repository.AnalysisQueueRepository;
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import com.isthispersonreal.api.resilience.UploadRateLimiter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BulkAnalysisServiceTest {
+
+    private static final byte[] KNOWN = "known image".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] IN_FLIGHT = "image another upload is analysing".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FRESH = "new image".getBytes(StandardCharsets.UTF_8);
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private ImagePrescreener imagePrescreener;
+
+    @Mock
+    private PerceptualHasher perceptualHasher;
+
+    @Mock
+    private PerceptualHashIndex perceptualHashIndex;
+
+    @Mock
+    private AnalysisResultRepository analysisResultRepository;
+
+    @Mock
+    private AnalysisQueueRepository analysisQueueRepository;
+
+    @Mock
+    private AnalysisResultCache analysisResultCache;
+
+    @Mock
+    private AnalysisCoalescer analysisCoalescer;
+
+    @Mock
+    private MlBatchDispatcher mlBatchDispatcher;
+
+    @Mock
+    private UserAnalysisStatsService userAnalysisStatsService;
+
+    @Mock
+    private AnalysisStatsService analysisStatsService;
+
+    @Mock
+    private ExplanationService explanationService;
+
+    @Mock
+    private UploadRateLimiter uploadRateLimiter;
+
+    @InjectMocks
+    private BulkAnalysisService bulkAnalysisService;
+
+    @TempDir
+    Path storage;
+
+    private final User user = new User("alice", "alice@example.com", "password", User.Role.USER);
+    private final AtomicLong ids = new AtomicLong(100);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ImageStorageService imageStorageService = new ImageStorageService();
+        ReflectionTestUtils.setField(imageStorageService, "storagePath", storage.toString());
+        ReflectionTestUtils.setField(imageStorageService, "bufferSize", 8192);
+        imageStorageService.init();
+
+        ReflectionTestUtils.setField(bulkAnalysisService, "imageStorageService", imageStorageService);
+        ReflectionTestUtils.setField(bulkAnalysisService, "blockingScheduler", Schedulers.boundedElastic());
+        ReflectionTestUtils.setField(bulkAnalysisService, "maxImages", 10);
+        ReflectionTestUtils.setField(bulkAnalysisService, "persistBatchSize", 16);
+        ReflectionTestUtils.setField(bulkAnalysisService, "persistWindowMs", 20L);
+        ReflectionTestUtils.setField(bulkAnalysisService, "maxWait", Duration.ofMillis(100));
+        ReflectionTestUtils.setField(bulkAnalysisService, "maxFileSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(bulkAnalysisService, "perceptualHashEnabled", false);
+        ReflectionTestUtils.setField(bulkAnalysisService, "mlServiceTimeout", 5000);
+    }
+
+    @Test
+    void reportsEveryImageOfTheGalleryExactlyOnce() throws Exception {
+        String knownHash = sha256(KNOWN);
+        String inFlightHash = sha256(IN_FLIGHT);
+        AnalysisResult known = new AnalysisResult(user, knownHash, "known.jpg", AnalysisResult.DetectionLabel.REAL, 0.97);
+        known.setId(1L);
+        AnalysisQueue inFlight = new AnalysisQueue(user, inFlightHash, "in-flight.jpg", (long) IN_FLIGHT.length, "image/jpeg");
+        inFlight.setStatus(AnalysisQueue.QueueStatus.PROCESSING);
+
+        when(userService.findByUsername("alice")).thenReturn(Optional.of(user));
+        when(imagePrescreener.inspect(any())).thenReturn(new ImagePrescreener.ImageInfo(ImagePrescreener.Format.JPEG, 640, 480));
+        when(imagePrescreener.downscale(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(analysisResultRepository.findByImageHashIn(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(0).contains(knownHash) ? List.of(known) : List.of());
+        when(analysisQueueRepository.findByImageHashIn(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(0).contains(inFlightHash) ? List.of(inFlight) : List.of());
+        when(analysisCoalescer.watchResult(eq(inFlightHash), any())).thenReturn(Mono.empty());
+        when(uploadRateLimiter.acquire(any(), anyInt())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(mlBatchDispatcher.submit(any())).thenReturn(CompletableFuture.completedFuture(
+                new MlVerdict("REAL", 0.91, Map.of("REAL", 0.91, "AI_GENERATED", 0.09), "test")));
+        when(userAnalysisStatsService.saveResults(anyList())).thenAnswer(invocation -> {
+            List<AnalysisResult> results = invocation.getArgument(0);
+            results.forEach(result -> result.setId(ids.incrementAndGet()));
+            return results;
+        });
+
+        List<MultipartFile> files = List.of(
+                file("known.jpg", KNOWN),
+                file("in-flight.jpg", IN_FLIGHT),
+                file("new.jpg", FRESH),
+                // A second copy of the new image shares its analysis
+                file("new-copy.jpg", FRESH));
+
+        List<BulkAnalysisItem> items = bulkAnalysisService.analyze(files, "alice")
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertNotNull(items);
+        Map<Integer, List<BulkAnalysisItem>> byIndex = items.stream()
+                .collect(Collectors.groupingBy(BulkAnalysisItem::getIndex));
+        assertEquals(4, items.size(), () -> "items: " + byIndex.keySet());
+        assertEquals(4, byIndex.size());
+
+        Map<Integer, BulkAnalysisItem> item = items.stream()
+                .collect(Collectors.toMap(BulkAnalysisItem::getIndex, Function.identity()));
+        assertEquals(BulkAnalysisItem.Status.COMPLETED, item.get(0).getStatus());
+        assertEquals(known, item.get(0).getResult());
+        assertEquals(BulkAnalysisItem.Status.PROCESSING, item.get(1).getStatus());
+        assertEquals(BulkAnalysisItem.Status.COMPLETED, item.get(2).getStatus());
+        assertEquals(BulkAnalysisItem.Status.COMPLETED, item.get(3).getStatus());
+        assertEquals(item.get(2).getResult(), item.get(3).getResult());
+
+        // Only the new image reaches the ML service, once for both copies
+        verify(mlBatchDispatcher).submit(any());
+    }
+
+    @Test
+    void reportsRateLimitedImages() throws Exception {
+        when(userService.findByUsername("alice")).thenReturn(Optional.of(user));
+        when(imagePrescreener.inspect(any())).thenReturn(new ImagePrescreener.ImageInfo(ImagePrescreener.Format.JPEG, 640, 480));
+        when(analysisResultRepository.findByImageHashIn(anyCollection())).thenReturn(List.of());
+        when(analysisQueueRepository.findByImageHashIn(anyCollection())).thenReturn(List.of());
+        when(uploadRateLimiter.acquire(any(), anyInt())).thenReturn(0);
+
+        List<BulkAnalysisItem> items = bulkAnalysisService.analyze(List.of(file("new.jpg", FRESH)), "alice")
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertNotNull(items);
+        assertEquals(1, items.size());
+        assertEquals(0, items.get(0).getIndex());
+        assertEquals(BulkAnalysisItem.Status.RATE_LIMITED, items.get(0).getStatus());
+    }
+
+    @Test
+    void keepsTheRowAnotherUploadStoredFirst() throws Exception {
+        String freshHash = sha256(FRESH);
+        AnalysisResult winner = new AnalysisResult(user, freshHash, "new.jpg", AnalysisResult.DetectionLabel.REAL, 0.9);
+        winner.setId(1L);
+
+        when(userService.findByUsername("alice")).thenReturn(Optional.of(user));
+        when(imagePrescreener.inspect(any())).thenReturn(new ImagePrescreener.ImageInfo(ImagePrescreener.Format.JPEG, 640, 480));
+        when(imagePrescreener.downscale(any(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(analysisResultRepository.findByImageHashIn(anyCollection())).thenReturn(List.of());
+        when(analysisQueueRepository.findByImageHashIn(anyCollection())).thenReturn(List.of());
+        when(uploadRateLimiter.acquire(any(), anyInt())).thenAnswer(invocation -> invocation.getArgument(1));
+        when(mlBatchDispatcher.submit(any())).thenReturn(CompletableFuture.completedFuture(
+                new MlVerdict("REAL", 0.91, Map.of("REAL", 0.91, "AI_GENERATED", 0.09), "test")));
+        // The single upload's insert lands between the existence check and the batch insert
+        when(userAnalysisStatsService.saveResults(anyList())).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+        when(userAnalysisStatsService.saveResult(any())).thenThrow(new DataIntegrityViolationException("Duplicate entry"));
+        when(analysisResultRepository.findByImageHash(freshHash)).thenReturn(Optional.of(winner));
+
+        List<BulkAnalysisItem> items = bulkAnalysisService.analyze(List.of(file("new.jpg", FRESH)), "alice")
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertNotNull(items);
+        assertEquals(1, items.size());
+        assertEquals(BulkAnalysisItem.Status.COMPLETED, items.get(0).getStatus());
+        assertEquals(winner, items.get(0).getResult());
+        verify(analysisCoalescer).complete(winner);
+        verifyNoInteractions(explanationService, analysisStatsService);
+    }
+
+    private static MockMultipartFile file(String name, byte[] content) {
+        return new MockMultipartFile("files", name, "image/jpeg", content);
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}
\ No newline at end of file
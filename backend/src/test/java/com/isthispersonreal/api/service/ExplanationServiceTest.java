@@ -0,0 +1,94 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.model.AnalysisResult;
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExplanationServiceTest {
+
+    private static final String HASH = "a1b2c3";
+
+    @Mock
+    private OpenAIService openAIService;
+
+    @Mock
+    private AnalysisResultRepository analysisResultRepository;
+
+    @Mock
+    private AnalysisResultCache analysisResultCache;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @InjectMocks
+    private ExplanationService explanationService;
+
+    private final AnalysisResult result = new AnalysisResult(null, HASH, "image.jpg", AnalysisResult.DetectionLabel.REAL, 0.9);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(explanationService, "blockingScheduler", Schedulers.immediate());
+        ReflectionTestUtils.setField(explanationService, "maxConcurrent", 2);
+        explanationService.init();
+        result.setId(7L);
+        when(analysisResultCache.get(eq(HASH), any())).thenReturn(Optional.of(result));
+    }
+
+    @AfterEach
+    void tearDown() {
+        explanationService.shutdown();
+    }
+
+    @Test
+    void failureReachesTheListenerAndLeavesTheExplanationUnset() {
+        when(openAIService.analyzeImageResultAsync(result))
+                .thenReturn(Mono.error(new IllegalStateException("OpenAI analysis not available - API key not configured")));
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> explanationService.watchExplanation(HASH, Duration.ofSeconds(5)).block(Duration.ofSeconds(5)));
+
+        assertEquals("OpenAI analysis not available - API key not configured", error.getMessage());
+        assertNull(result.getOpenaiAnalysis());
+        verify(analysisResultRepository, never()).updateOpenaiAnalysis(anyLong(), anyString(), any());
+    }
+
+    @Test
+    void laterRequestRetriesAfterAFailure() {
+        when(openAIService.analyzeImageResultAsync(result))
+                .thenReturn(Mono.error(new IllegalStateException("Unable to generate OpenAI analysis")))
+                .thenReturn(Mono.just("Looks like a real photograph"));
+
+        assertThrows(RuntimeException.class,
+                () -> explanationService.watchExplanation(HASH, Duration.ofSeconds(5)).block(Duration.ofSeconds(5)));
+        String explanation = explanationService.watchExplanation(HASH, Duration.ofSeconds(5)).block(Duration.ofSeconds(5));
+
+        assertEquals("Looks like a real photograph", explanation);
+        verify(openAIService, times(2)).analyzeImageResultAsync(result);
+        verify(analysisResultRepository).updateOpenaiAnalysis(eq(7L), eq("Looks like a real photograph"), any());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.isthispersonreal.api.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageStorageServiceTest {
+
+    @TempDir
+    Path storage;
+
+    private ImageStorageService imageStorageService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        imageStorageService = new ImageStorageService();
+        ReflectionTestUtils.setField(imageStorageService, "storagePath", storage.toString());
+        ReflectionTestUtils.setField(imageStorageService, "bufferSize", 1024);
+        imageStorageService.init();
+    }
+
+    @Test
+    void spoolsAndHashesInOnePass() throws Exception {
+        byte[] content = new byte[10_000];
+        new Random(7).nextBytes(content);
+
+        IngestedImage image = imageStorageService.ingest(new ByteArrayInputStream(content), "a.jpg", "image/jpeg", 1 << 20);
+
+        assertEquals(content.length, image.getSize());
+        assertArrayEquals(content, Files.readAllBytes(image.getSpoolPath()));
+        assertEquals(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)), image.getImageHash());
+    }
+
+    @Test
+    void removesTheSpoolFileOfAnOversizedUpload() throws Exception {
+        InputStream in = new ByteArrayInputStream(new byte[5000]);
+
+        assertThrows(IOException.class, () -> imageStorageService.ingest(in, "a.jpg", "image/jpeg", 4096));
+
+        assertTrue(spoolFiles().isEmpty());
+    }
+
+    @Test
+    void removesTheSpoolFileWhenTheStreamFailsUnchecked() throws Exception {
+        InputStream in = new InputStream() {
+            private int left = 3000;
+
+            @Override
+            public int read() {
+                if (left-- == 0) {
+                    throw new IllegalStateException("multipart stream reset");
+                }
+                return 1;
+            }
+        };
+
+        assertThrows(IllegalStateException.class, () -> imageStorageService.ingest(in, "a.jpg", "image/jpeg", 1 << 20));
+
+        assertTrue(spoolFiles().isEmpty());
+    }
+
+    private List<Path> spoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(storage)) {
+            return files.toList();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.isthispersonreal.api.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MlBatchDispatcherTest {
+
+    @Mock
+    private MlServiceClient mlServiceClient;
+
+    @Mock
+    private MlEndpointPool endpointPool;
+
+    @InjectMocks
+    private MlBatchDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(dispatcher, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(dispatcher, "batchingEnabled", true);
+        ReflectionTestUtils.setField(dispatcher, "windowMs", 50L);
+        ReflectionTestUtils.setField(dispatcher, "maxBatchSize", 8);
+        // A single permit, a leaked one would stall every later batch
+        ReflectionTestUtils.setField(dispatcher, "maxInFlight", 1);
+        when(endpointPool.size()).thenReturn(1);
+        dispatcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    void batchThatFailsBeforeItIsSentFailsItsRequestsAndFreesItsPermit() throws Exception {
+        MlVerdict verdict = new MlVerdict("REAL", 0.9, Map.of("REAL", 0.9), "stub");
+        when(mlServiceClient.analyzeBatch(anyList()))
+                .thenThrow(new IllegalStateException("no ML endpoint available"))
+                .thenReturn(Mono.just(List.of(verdict, verdict)));
+
+        List<CompletableFuture<MlVerdict>> failed = List.of(dispatcher.submit(request()), dispatcher.submit(request()));
+        for (CompletableFuture<MlVerdict> future : failed) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+
+        List<CompletableFuture<MlVerdict>> retried = List.of(dispatcher.submit(request()), dispatcher.submit(request()));
+        for (CompletableFuture<MlVerdict> future : retried) {
+            assertEquals(verdict, future.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static MlAnalysisRequest request() {
+        return new MlAnalysisRequest(new ByteArrayResource(new byte[]{1, 2, 3}), "a.jpg", "image/jpeg");
+    }
+}
\ No newline at end of file
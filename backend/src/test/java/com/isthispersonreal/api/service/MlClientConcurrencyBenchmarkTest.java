@@ -0,0 +1,129 @@
+package com.isthispersonreal.api.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import reactor.core.publisher.Flux;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Measures MlServiceClient alone, not the upload endpoints: the same ML calls issued blocking from a
+// servlet-sized thread pool (one thread parked per call) and non-blocking from a single flatMap, against
+// an ML service stub with fixed latency. Controller, storage and database costs are not included.
+// Run with: mvn test -Pbenchmark
+@Tag("benchmark")
+class MlClientConcurrencyBenchmarkTest {
+
+    private static final int REQUESTS = 1000;
+    private static final int ML_LATENCY_MS = 100;
+
+    // Tomcat's default maximum worker thread count
+    private static final int SERVLET_THREADS = 200;
+
+    private static final byte[] ML_RESPONSE = ("{\"label\":\"REAL\",\"confidence\":0.9,"
+            + "\"scores\":{\"REAL\":0.9,\"AI_GENERATED\":0.1},\"model_version\":\"stub\"}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer mlServer;
+    private ExecutorService mlServerThreads;
+    private MlServiceClient mlServiceClient;
+
+    @BeforeEach
+    void startMlStub() throws Exception {
+        mlServerThreads = Executors.newCachedThreadPool();
+        mlServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 2048);
+        mlServer.setExecutor(mlServerThreads);
+        mlServer.createContext("/analyze", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                body.readAllBytes();
+                Thread.sleep(ML_LATENCY_MS);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, ML_RESPONSE.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(ML_RESPONSE);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        mlServer.start();
+
+        MlEndpointPool pool = MlEndpointPoolTest.pool(new String[]{"http://127.0.0.1:" + mlServer.getAddress().getPort()}, 3, 3.0);
+        mlServiceClient = MlEndpointPoolTest.client(pool);
+    }
+
+    @AfterEach
+    void stopMlStub() {
+        mlServer.stop(0);
+        mlServerThreads.shutdownNow();
+    }
+
+    @Test
+    void compareBlockingAndNonBlockingMlCalls() throws Exception {
+        // Warm up connections and codecs so neither run pays for them
+        Flux.range(0, 50).flatMap(i -> mlServiceClient.analyze(request())).blockLast();
+
+        long blockingStart = System.nanoTime();
+        int blockingCompleted = runBlocking();
+        long blockingMs = (System.nanoTime() - blockingStart) / 1_000_000;
+
+        long reactiveStart = System.nanoTime();
+        int reactiveCompleted = runReactive();
+        long reactiveMs = (System.nanoTime() - reactiveStart) / 1_000_000;
+
+        System.out.printf("blocking ML calls: %d in %d ms (%.0f calls/s) on %d threads%n",
+                blockingCompleted, blockingMs, blockingCompleted * 1000.0 / blockingMs, SERVLET_THREADS);
+        System.out.printf("non-blocking ML calls: %d in %d ms (%.0f calls/s) on the client event loop%n",
+                reactiveCompleted, reactiveMs, reactiveCompleted * 1000.0 / reactiveMs);
+
+        assertEquals(REQUESTS, blockingCompleted);
+        assertEquals(REQUESTS, reactiveCompleted);
+    }
+
+    private int runBlocking() throws Exception {
+        ExecutorService servletThreads = Executors.newFixedThreadPool(SERVLET_THREADS);
+        try {
+            AtomicInteger completed = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                futures.add(servletThreads.submit(() -> {
+                    if (mlServiceClient.analyze(request()).block() != null) {
+                        completed.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return completed.get();
+        } finally {
+            servletThreads.shutdownNow();
+        }
+    }
+
+    private int runReactive() {
+        Long completed = Flux.range(0, REQUESTS)
+                .flatMap(i -> mlServiceClient.analyze(request()), REQUESTS)
+                .count()
+                .block();
+        return completed != null ? completed.intValue() : 0;
+    }
+
+    private MlAnalysisRequest request() {
+        return new MlAnalysisRequest(new ByteArrayResource(new byte[2048]), "image.jpg", "image/jpeg");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,221 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.resilience.DownstreamGuardRegistry;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs MlServiceClient against several stub ML replicas with different latency and failure behaviour
+class MlEndpointPoolTest {
+
+    private static final byte[] ML_RESPONSE = ("{\"label\":\"REAL\",\"confidence\":0.9,"
+            + "\"scores\":{\"REAL\":0.9,\"AI_GENERATED\":0.1},\"model_version\":\"stub\"}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    static {
+        // Otherwise Nagle and delayed ACKs add ~40 ms to every stub response and drown the latency differences
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final List<StubReplica> replicas = new ArrayList<>();
+
+    @AfterEach
+    void stopReplicas() {
+        replicas.forEach(StubReplica::stop);
+    }
+
+    @Test
+    void prefersTheFasterReplica() throws Exception {
+        StubReplica fast = start(5, 200, 200);
+        StubReplica slow = start(60, 200, 200);
+        // Latency outlier ejection off, only the balancing is under test
+        MlEndpointPool pool = pool(3, 1000.0);
+        MlServiceClient client = client(pool);
+
+        Flux.range(0, 300).flatMap(i -> client.analyze(request()), 16).blockLast(Duration.ofSeconds(60));
+
+        assertEquals(300, fast.analyzed.get() + slow.analyzed.get());
+        assertTrue(fast.analyzed.get() > 3 * slow.analyzed.get(),
+                "fast=" + fast.analyzed.get() + " slow=" + slow.analyzed.get());
+    }
+
+    @Test
+    void ejectsReplicaThatKeepsFailing() throws Exception {
+        StubReplica healthy = start(5, 200, 200);
+        StubReplica broken = start(5, 500, 200);
+        MlEndpointPool pool = pool(3, 1000.0);
+        MlServiceClient client = client(pool);
+
+        AtomicInteger failures = new AtomicInteger();
+        Flux.range(0, 100)
+                .concatMap(i -> client.analyze(request()).onErrorResume(e -> {
+                    failures.incrementAndGet();
+                    return Mono.empty();
+                }))
+                .blockLast(Duration.ofSeconds(60));
+
+        assertTrue(endpoint(pool, broken).isEjected());
+        assertTrue(endpoint(pool, healthy).isAvailable());
+        // Three strikes and out, the rest of the traffic only reaches the healthy replica
+        assertEquals(3, failures.get());
+        assertEquals(3, broken.analyzed.get());
+        assertEquals(97, healthy.analyzed.get());
+    }
+
+    @Test
+    void ejectsLatencyOutlier() throws Exception {
+        StubReplica first = start(5, 200, 200);
+        StubReplica second = start(5, 200, 200);
+        StubReplica lagging = start(150, 200, 200);
+        MlEndpointPool pool = pool(3, 3.0);
+        MlServiceClient client = client(pool);
+
+        Flux.range(0, 200).flatMap(i -> client.analyze(request()), 8).blockLast(Duration.ofSeconds(60));
+
+        assertTrue(endpoint(pool, lagging).isEjected());
+        assertTrue(endpoint(pool, first).isAvailable());
+        assertTrue(endpoint(pool, second).isAvailable());
+    }
+
+    @Test
+    void healthCheckTakesReplicaOutOfRotation() throws Exception {
+        StubReplica up = start(5, 200, 200);
+        StubReplica draining = start(5, 200, 503);
+        MlEndpointPool pool = pool(3, 1000.0);
+        MlServiceClient client = client(pool);
+
+        pool.checkHealth();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (endpoint(pool, draining).isAvailable() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(endpoint(pool, draining).isAvailable());
+
+        Flux.range(0, 50).flatMap(i -> client.analyze(request()), 8).blockLast(Duration.ofSeconds(60));
+
+        assertEquals(0, draining.analyzed.get());
+        assertEquals(50, up.analyzed.get());
+    }
+
+    private StubReplica start(int latencyMs, int analyzeStatus, int healthStatus) throws Exception {
+        StubReplica replica = new StubReplica(latencyMs, analyzeStatus, healthStatus);
+        replicas.add(replica);
+        return replica;
+    }
+
+    private MlEndpointPool pool(int ejectAfterFailures, double latencyFactor) {
+        return pool(replicas.stream().map(StubReplica::url).toArray(String[]::new), ejectAfterFailures, latencyFactor);
+    }
+
+    static MlEndpointPool pool(String[] urls, int ejectAfterFailures, double latencyFactor) {
+        MlEndpointPool pool = new MlEndpointPool();
+        ReflectionTestUtils.setField(pool, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(pool, "urls", urls);
+        ReflectionTestUtils.setField(pool, "healthTimeout", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(pool, "ejectAfterFailures", ejectAfterFailures);
+        ReflectionTestUtils.setField(pool, "ejectionDuration", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(pool, "latencyFactor", latencyFactor);
+        pool.init();
+        return pool;
+    }
+
+    static MlServiceClient client(MlEndpointPool pool) {
+        DownstreamGuardRegistry guards = new DownstreamGuardRegistry();
+        ReflectionTestUtils.setField(guards, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(guards, "initialLimit", 1000);
+        ReflectionTestUtils.setField(guards, "minLimit", 1000);
+        ReflectionTestUtils.setField(guards, "maxLimit", 1000);
+        ReflectionTestUtils.setField(guards, "probeInterval", 1000);
+        ReflectionTestUtils.setField(guards, "windowSize", 50);
+        ReflectionTestUtils.setField(guards, "minimumCalls", 20);
+        ReflectionTestUtils.setField(guards, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(guards, "openDuration", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(guards, "halfOpenCalls", 5);
+        guards.init();
+
+        MlServiceClient client = new MlServiceClient();
+        ReflectionTestUtils.setField(client, "downstreamGuardRegistry", guards);
+        ReflectionTestUtils.setField(client, "endpointPool", pool);
+        ReflectionTestUtils.setField(client, "mlServiceTimeout", 60000);
+        ReflectionTestUtils.setField(client, "maxResponseSize", 262144);
+        ReflectionTestUtils.setField(client, "protocol", "json");
+        client.init();
+        return client;
+    }
+
+    private MlEndpointPool.MlEndpoint endpoint(MlEndpointPool pool, StubReplica replica) {
+        return pool.getEndpoints().stream()
+                .filter(endpoint -> endpoint.getUrl().equals(replica.url()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private MlAnalysisRequest request() {
+        return new MlAnalysisRequest(new ByteArrayResource(new byte[1024]), "face.jpg", "image/jpeg");
+    }
+
+    private static class StubReplica {
+
+        private final HttpServer server;
+        private final ExecutorService threads = Executors.newCachedThreadPool();
+        private final AtomicInteger analyzed = new AtomicInteger();
+
+        StubReplica(int latencyMs, int analyzeStatus, int healthStatus) throws Exception {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+            server.setExecutor(threads);
+            server.createContext("/analyze", exchange -> {
+                try (InputStream body = exchange.getRequestBody()) {
+                    body.readAllBytes();
+                    analyzed.incrementAndGet();
+                    Thread.sleep(latencyMs);
+                    if (analyzeStatus != 200) {
+                        exchange.sendResponseHeaders(analyzeStatus, -1);
+                        exchange.close();
+                        return;
+                    }
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, ML_RESPONSE.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(ML_RESPONSE);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            server.createContext("/health", exchange -> {
+                exchange.sendResponseHeaders(healthStatus, -1);
+                exchange.close();
+            });
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+            threads.shutdownNow();
+        }
+    }
+}
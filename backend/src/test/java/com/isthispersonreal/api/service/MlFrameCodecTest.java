@@ -0,0 +1,248 @@
+package com.isthispersonreal.api.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Response frames are built here the way ml-service/frame_protocol.py writes them
+class MlFrameCodecTest {
+
+    private static final int INLINE = 0xFF;
+
+    @Test
+    void writesTheRequestHeader() {
+        DataBuffer header = MlFrameCodec.header(DefaultDataBufferFactory.sharedInstance, MlFrameCodec.KIND_RGB8_TENSOR, 224, 224, 3);
+
+        assertArrayEquals(new byte[]{1, 1, 0, (byte) 224, 0, (byte) 224, 0, 3}, bytes(header));
+    }
+
+    @Test
+    void writesBigEndianLengths() {
+        DataBuffer length = MlFrameCodec.length(DefaultDataBufferFactory.sharedInstance, 0x01020304);
+
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, bytes(length));
+    }
+
+    @Test
+    void rejectsValuesThatDoNotFitTheirField() {
+        assertThrows(IllegalArgumentException.class,
+                () -> MlFrameCodec.header(DefaultDataBufferFactory.sharedInstance, MlFrameCodec.KIND_IMAGE, 0, 0, 0x10000));
+        assertThrows(IllegalArgumentException.class,
+                () -> MlFrameCodec.length(DefaultDataBufferFactory.sharedInstance, 1L << 31));
+    }
+
+    @Test
+    void decodesDictionaryNames() throws IOException {
+        Frame frame = new Frame(1);
+        frame.ok(1, 0.875, "v2").score(0, 0.125).score(1, 0.875);
+
+        List<MlVerdict> verdicts = MlFrameCodec.decodeResults(frame.toBuffer());
+
+        assertEquals(1, verdicts.size());
+        MlVerdict verdict = verdicts.get(0);
+        assertEquals("AI_GENERATED", verdict.getLabel());
+        assertEquals(0.875, verdict.getConfidence());
+        assertEquals(Map.of("REAL", 0.125, "AI_GENERATED", 0.875), verdict.getScores());
+        assertEquals("v2", verdict.getModelVersion());
+    }
+
+    @Test
+    void decodesInlineNames() throws IOException {
+        Frame frame = new Frame(1);
+        frame.okInline("PARTIALLY_EDITED", 0.5, "v2").score(0, 0.25).scoreInline("PARTIALLY_EDITED", 0.5)
+                // An inline name that happens to be in the dictionary resolves to the shared constant
+                .scoreInline("UNCERTAIN", 0.25);
+
+        MlVerdict verdict = MlFrameCodec.decodeResults(frame.toBuffer()).get(0);
+
+        assertEquals("PARTIALLY_EDITED", verdict.getLabel());
+        Map<String, Double> expected = new LinkedHashMap<>();
+        expected.put("REAL", 0.25);
+        expected.put("PARTIALLY_EDITED", 0.5);
+        expected.put("UNCERTAIN", 0.25);
+        assertEquals(expected, verdict.getScores());
+        assertTrue(verdict.getScores().keySet().stream().anyMatch(name -> name == "UNCERTAIN"));
+    }
+
+    @Test
+    void keepsNaNScores() throws IOException {
+        Frame frame = new Frame(1);
+        frame.ok(0, 0.5, "v2").score(0, Double.NaN);
+
+        MlVerdict verdict = MlFrameCodec.decodeResults(frame.toBuffer()).get(0);
+
+        assertTrue(verdict.getScores().get("REAL").isNaN());
+    }
+
+    @Test
+    void decodesFailedItemsBetweenGoodOnes() throws IOException {
+        Frame frame = new Frame(3);
+        frame.ok(0, 0.9, "v2").score(0, 0.9);
+        frame.failed("cannot decode image");
+        frame.ok(2, 0.5, "v2");
+
+        List<MlVerdict> verdicts = MlFrameCodec.decodeResults(frame.toBuffer());
+
+        assertEquals(3, verdicts.size());
+        assertEquals("REAL", verdicts.get(0).getLabel());
+        assertTrue(verdicts.get(1).isFailed());
+        assertEquals("cannot decode image", verdicts.get(1).getError());
+        assertEquals("UNCERTAIN", verdicts.get(2).getLabel());
+        assertTrue(verdicts.get(2).getScores().isEmpty());
+    }
+
+    @Test
+    void rejectsAnUnknownVersion() throws IOException {
+        ByteBuffer buffer = new Frame(0).toBuffer();
+        buffer.put(0, (byte) 2);
+
+        assertThrows(IllegalStateException.class, () -> MlFrameCodec.decodeResults(buffer));
+    }
+
+    @Test
+    void rejectsTruncatedFrames() throws IOException {
+        Frame frame = new Frame(2);
+        frame.okInline("PARTIALLY_EDITED", 0.5, "v2").score(0, 0.5);
+        frame.failed("timeout");
+        byte[] complete = frame.toBytes();
+
+        for (int length = 0; length < complete.length; length++) {
+            ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(complete, length));
+            assertThrows(BufferUnderflowException.class, () -> MlFrameCodec.decodeResults(truncated), "length " + length);
+        }
+    }
+
+    private static byte[] bytes(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        return bytes;
+    }
+
+    // Builds a response frame; scores are appended to the item written last, so counts are patched in at the end
+    private static class Frame {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final List<Item> items = new ArrayList<>();
+
+        private Frame(int count) throws IOException {
+            out.writeByte(1);
+            out.writeShort(count);
+        }
+
+        private Frame ok(int labelId, double confidence, String modelVersion) {
+            items.add(new Item(new byte[]{0, (byte) labelId}, confidence, modelVersion));
+            return this;
+        }
+
+        private Frame okInline(String label, double confidence, String modelVersion) {
+            items.add(new Item(inline(0, label), confidence, modelVersion));
+            return this;
+        }
+
+        private Frame score(int nameId, double value) {
+            last().scores.add(concat(new byte[]{(byte) nameId}, value));
+            return this;
+        }
+
+        private Frame scoreInline(String name, double value) {
+            last().scores.add(concat(inline(-1, name), value));
+            return this;
+        }
+
+        private Frame failed(String message) {
+            items.add(new Item(message));
+            return this;
+        }
+
+        private ByteBuffer toBuffer() throws IOException {
+            return ByteBuffer.wrap(toBytes());
+        }
+
+        private byte[] toBytes() throws IOException {
+            for (Item item : items) {
+                item.writeTo(out);
+            }
+            items.clear();
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private Item last() {
+            return items.get(items.size() - 1);
+        }
+
+        // An optional status byte, then the inline marker, a length byte and the UTF-8 name
+        private static byte[] inline(int status, String name) {
+            byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate((status >= 0 ? 1 : 0) + 2 + utf8.length);
+            if (status >= 0) {
+                buffer.put((byte) status);
+            }
+            return buffer.put((byte) INLINE).put((byte) utf8.length).put(utf8).array();
+        }
+
+        private static byte[] concat(byte[] name, double value) {
+            return ByteBuffer.allocate(name.length + 8).put(name).putDouble(value).array();
+        }
+    }
+
+    private static class Item {
+
+        private final byte[] statusAndLabel;
+        private final double confidence;
+        private final String modelVersion;
+        private final String error;
+        private final List<byte[]> scores = new ArrayList<>();
+
+        private Item(byte[] statusAndLabel, double confidence, String modelVersion) {
+            this.statusAndLabel = statusAndLabel;
+            this.confidence = confidence;
+            this.modelVersion = modelVersion;
+            this.error = null;
+        }
+
+        private Item(String error) {
+            this.statusAndLabel = null;
+            this.confidence = 0;
+            this.modelVersion = null;
+            this.error = error;
+        }
+
+        private void writeTo(DataOutputStream out) throws IOException {
+            if (error != null) {
+                byte[] message = error.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(1);
+                out.writeShort(message.length);
+                out.write(message);
+                return;
+            }
+            out.write(statusAndLabel);
+            out.writeDouble(confidence);
+            out.writeByte(scores.size());
+            for (byte[] score : scores) {
+                out.write(score);
+            }
+            byte[] version = modelVersion.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(version.length);
+            out.write(version);
+        }
+    }
+}
\ No newline at end of file
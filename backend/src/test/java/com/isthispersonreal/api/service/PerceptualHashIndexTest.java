@@ -0,0 +1,107 @@
+package com.isthispersonreal.api.service;
+
+import com.isthispersonreal.api.repository.AnalysisResultRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PerceptualHashIndexTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    @Mock
+    private AnalysisResultRepository analysisResultRepository;
+
+    @InjectMocks
+    private PerceptualHashIndex index;
+
+    // Rows as the database would return them: id, perceptual hash, created at
+    private final List<Object[]> table = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "loadBatchSize", 2);
+        ReflectionTestUtils.setField(index, "refreshOverlap", Duration.ofMinutes(2));
+
+        when(analysisResultRepository.findPerceptualHashesAfter(any(), anyLong(), any())).thenAnswer(invocation -> {
+            LocalDateTime createdAt = invocation.getArgument(0);
+            long id = invocation.getArgument(1);
+            Pageable page = invocation.getArgument(2);
+            return table.stream()
+                    .filter(row -> ((LocalDateTime) row[2]).isAfter(createdAt)
+                            || (row[2].equals(createdAt) && (Long) row[0] > id))
+                    .sorted(Comparator.<Object[], LocalDateTime>comparing(row -> (LocalDateTime) row[2])
+                            .thenComparing(row -> (Long) row[0]))
+                    .limit(page.getPageSize())
+                    .toList();
+        });
+    }
+
+    @Test
+    void picksUpRowsWithLowerIdsFromOtherInstances() {
+        // Another instance draws ids from an older block of the pool
+        row(500, 0x0F0F0F0F0F0F0F0FL, NOW);
+        row(501, 0x00FF00FF00FF00FFL, NOW.plusSeconds(1));
+        row(502, 0x0123456789ABCDEFL, NOW.plusSeconds(2));
+        index.refresh();
+        assertEquals(3, index.size());
+
+        row(49, 0x7777777777777777L, NOW.plusSeconds(3));
+        index.refresh();
+
+        assertEquals(4, index.size());
+        assertEquals(49, index.findNearest(0x7777777777777777L, 0));
+    }
+
+    @Test
+    void picksUpRowsThatCommitAfterNewerOnes() {
+        row(1, 0x1111111111111111L, NOW);
+        row(2, 0x2222222222222222L, NOW.plusSeconds(30));
+        index.refresh();
+
+        // Stamped before the newest row seen, but only visible now
+        row(97, 0x3333333333333333L, NOW.plusSeconds(10));
+        index.refresh();
+
+        assertEquals(3, index.size());
+        assertEquals(97, index.findNearest(0x3333333333333333L, 0));
+    }
+
+    @Test
+    void indexesEachRowOnce() {
+        row(1, 0x1111111111111111L, NOW);
+        row(2, 0x2222222222222222L, NOW);
+        row(3, 0x3333333333333333L, NOW.plusSeconds(1));
+        index.refresh();
+        index.refresh();
+
+        // Stored here first, then read back from the database
+        index.add(4, 0x4444444444444444L);
+        row(4, 0x4444444444444444L, NOW.plusSeconds(2));
+        index.refresh();
+
+        assertEquals(4, index.size());
+    }
+
+    private void row(long id, long hash, LocalDateTime createdAt) {
+        table.add(new Object[]{id, hash, createdAt});
+    }
+}
\ No newline at end of file